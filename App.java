@@ -1,30 +1,25 @@
 //app
 package org.app;
 
-import firebase.FirebaseConfig;
 import ui.LoginScreen;
+import util.DataManager;
+import util.LeaderboardUploader;
 import util.ThemeManager;
 
 import javax.swing.*;
+import java.util.concurrent.TimeUnit;
 
 public class App {
     public static void main(String[] args) {
         // Initialize theme first (this will also initialize fonts)
         ThemeManager.getInstance();
 
-        // Initialize Firebase in a background thread to avoid blocking the UI
-        Thread firebaseInitThread = new Thread(() -> {
-            try {
-                FirebaseConfig.initialize();
-                System.out.println("Firebase initialized successfully");
-            } catch (Exception e) {
-                System.err.println("Firebase initialization error (app will work offline): " + e.getMessage());
-            }
-        });
-        firebaseInitThread.setDaemon(true);
-        firebaseInitThread.start();
+        // Write any queued user saves and leaderboard uploads before the JVM exits
+        Runtime.getRuntime().addShutdownHook(new Thread(DataManager::flush, "user-save-flush"));
+        Runtime.getRuntime().addShutdownHook(new Thread(
+                () -> LeaderboardUploader.getInstance().flush(3, TimeUnit.SECONDS), "leaderboard-upload-flush"));
 
-        // Launch the UI immediately without waiting for Firebase
+        // Firebase starts on first use (FirebaseConfig.ready()), so launch the UI right away
         SwingUtilities.invokeLater(() -> {
             new LoginScreen();
         });
@@ -0,0 +1,254 @@
+//util->CredentialStore
+package util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.google.gson.reflect.TypeToken;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Type;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * In-memory index of users.json.
+ * The file is parsed once; lookups are served from a concurrent map. The file is
+ * rewritten in the background only when a credential actually changes, and a
+ * WatchService picks up edits made by other processes.
+ */
+public class CredentialStore {
+    private final Path file;
+    private final Gson gson;
+    private final Map<String, String> credentials = new ConcurrentHashMap<>();
+    // Local changes not yet in the file, kept over anything reload() reads
+    private final Map<String, String> unwritten = new ConcurrentHashMap<>();
+
+    private final ExecutorService persister = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "credential-writer");
+        t.setDaemon(true);
+        return t;
+    });
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+    private volatile Future<?> lastPersist;
+
+    // Stamp of the file as we last wrote or read it, to ignore our own watch events
+    private volatile long knownStamp;
+    private volatile long externalReloads = 0;
+
+    public CredentialStore(Path file, Gson gson) {
+        this.file = file;
+        this.gson = gson;
+        reload();
+        startWatcher();
+    }
+
+    public boolean contains(String username) {
+        return credentials.containsKey(username);
+    }
+
+    public String get(String username) {
+        return credentials.get(username);
+    }
+
+    /**
+     * Store a credential. The file is only rewritten if the value changed.
+     * @param username the username
+     * @param credential the stored credential
+     */
+    public synchronized void put(String username, String credential) {
+        String previous = credentials.put(username, credential);
+        if (!Objects.equals(previous, credential)) {
+            unwritten.put(username, credential);
+            schedulePersist();
+        }
+    }
+
+    /**
+     * Replace several credentials with one write of the file. A credential is only
+     * replaced if it still has the value it had when the replacement was computed.
+     * @param expected the current credential of each user to replace
+     * @param replacements the new credential of each user
+     * @return how many credentials were replaced
+     */
+    public synchronized int replaceAll(Map<String, String> expected, Map<String, String> replacements) {
+        int replaced = 0;
+        for (Map.Entry<String, String> entry : replacements.entrySet()) {
+            String username = entry.getKey();
+            if (credentials.replace(username, expected.get(username), entry.getValue())) {
+                unwritten.put(username, entry.getValue());
+                replaced++;
+            }
+        }
+        if (replaced > 0) {
+            schedulePersist();
+        }
+        return replaced;
+    }
+
+    /**
+     * @return a copy of every stored credential by username
+     */
+    public Map<String, String> snapshot() {
+        return new HashMap<>(credentials);
+    }
+
+    /**
+     * Wait for any pending write of the credential file to finish.
+     * @return true if every change is in the file
+     */
+    public boolean flush() {
+        return flush(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Wait up to the given time until every change made so far is in the file,
+     * including changes made while an earlier write was running.
+     * @return true if every change is in the file, false on timeout or a failed write
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        while (true) {
+            Future<?> pending = lastPersist;
+            if (pending != null) {
+                try {
+                    pending.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch (TimeoutException e) {
+                    System.err.println("Timed out saving credentials");
+                    return false;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                } catch (ExecutionException e) {
+                    // persist() handles its own errors; unwritten below tells whether it worked
+                }
+            }
+            synchronized (this) { // put() holds it while it records a change and schedules its write
+                if (unwritten.isEmpty()) return true;
+                if (!dirty.get() && pending == lastPersist) {
+                    System.err.println("Could not save credentials for " + unwritten.size() + " user(s)");
+                    return false;
+                }
+            }
+            // Changed again while we waited; wait for that write too
+        }
+    }
+
+    public long getExternalReloads() {
+        return externalReloads;
+    }
+
+    public int size() {
+        return credentials.size();
+    }
+
+    private void schedulePersist() {
+        // Several changes before the writer runs collapse into a single write
+        if (dirty.compareAndSet(false, true)) {
+            lastPersist = persister.submit(this::persist);
+        }
+    }
+
+    private void persist() {
+        dirty.set(false);
+        Map<String, String> writing = new HashMap<>(unwritten);
+        try {
+            String json = gson.toJson(new TreeMap<>(credentials));
+            DataManager.writeAtomically(file, json.getBytes(StandardCharsets.UTF_8));
+            knownStamp = stamp();
+            // A value changed again since the copy above is left for the next write
+            writing.forEach(unwritten::remove);
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    private synchronized void reload() {
+        File f = file.toFile();
+        if (!f.exists()) return;
+
+        Map<String, String> loaded;
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            Type type = new TypeToken<Map<String, String>>() {}.getType();
+            loaded = gson.fromJson(reader, type);
+        } catch (IOException | JsonParseException e) {
+            // Probably caught another process mid-write; the next event will retry
+            System.err.println("Could not read credentials: " + e.getMessage());
+            return;
+        }
+        if (loaded == null) {
+            loaded = new HashMap<>();
+        }
+
+        Map<String, String> fromFile = loaded;
+        credentials.keySet().removeIf(username -> !fromFile.containsKey(username) && !unwritten.containsKey(username));
+        credentials.putAll(loaded);
+        // Local changes that haven't been written yet win over the file
+        credentials.putAll(unwritten);
+        knownStamp = stamp();
+    }
+
+    private long stamp() {
+        File f = file.toFile();
+        return f.lastModified() * 31 + f.length();
+    }
+
+    private void startWatcher() {
+        Path dir = file.toAbsolutePath().getParent();
+        WatchService watchService;
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            dir.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.err.println("Credential file watching unavailable: " + e.getMessage());
+            return;
+        }
+
+        Thread watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        Object context = event.context();
+                        if (context instanceof Path && ((Path) context).getFileName().equals(file.getFileName())) {
+                            changed = true;
+                        }
+                    }
+                    if (changed && stamp() != knownStamp) {
+                        reload();
+                        externalReloads++;
+                        System.out.println("Reloaded credentials changed outside the app");
+                    }
+                    if (!key.reset()) {
+                        return;
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // Shutting down
+            }
+        }, "credential-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+}
@@ -10,33 +10,108 @@ import com.google.gson.JsonParseException;
 import com.google.gson.JsonPrimitive;
 import com.google.gson.JsonSerializationContext;
 import com.google.gson.JsonSerializer;
-import com.google.gson.reflect.TypeToken;
+import models.Task;
 import models.User;
 
 import java.io.*;
 import java.lang.reflect.Type;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
 import java.time.LocalDate;
 import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
 
 public class DataManager {
     private static final String USER_DIR = "data/";
     private static final String PASSWORD_FILE = USER_DIR + "users.json";
 
+    // User snapshot format for this install: "json" (default) or "binary"
+    public static final String FORMAT_PROPERTY = "studyleveling.storage.format";
+    private static final boolean BINARY_FORMAT = "binary".equalsIgnoreCase(System.getProperty(FORMAT_PROPERTY, "json"));
+
+    // Which UserRepository backs loadUser/saveUser: "files" (default) or "embedded"
+    public static final String REPOSITORY_PROPERTY = "studyleveling.storage.repository";
+
+    static {
+        File dir = new File(USER_DIR);
+        if (!dir.exists()) dir.mkdirs();
+    }
+
     // Add custom serializer/deserializer for LocalDate
     private static final Gson gson = new GsonBuilder()
         .setPrettyPrinting()
         .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
         .create();
 
-    private static Map<String, String> userPasswords = loadPasswordMap();
+    // Single-line Gson for journal entries
+    private static final Gson compactGson = new GsonBuilder()
+        .registerTypeAdapter(LocalDate.class, new LocalDateAdapter())
+        .create();
+
+    // users.json parsed once and kept in memory; lookups never touch the disk
+    private static final CredentialStore credentials = new CredentialStore(new File(PASSWORD_FILE).toPath(), gson);
+
+    // Passwords are stored as salted PBKDF2 hashes; hashing is slow on purpose
+    private static final PasswordHasher passwordHasher = PasswordHasher.fromSystemProperties();
+
+    // Small fixed pool so password checks never run on the Swing thread
+    private static final ExecutorService passwordWorkers = Executors.newFixedThreadPool(2, r -> {
+        Thread t = new Thread(r, "password-verify");
+        t.setDaemon(true);
+        return t;
+    });
 
     static {
-        File dir = new File(USER_DIR);
-        if (!dir.exists()) dir.mkdirs();
+        hashPlaintextPasswords();
     }
 
+    // Small changes are appended here instead of rewriting the whole user file
+    private static final UserJournal journal = new UserJournal(USER_DIR, compactGson);
+
+    // Parsed users, so repeat loads don't re-read and re-parse the file
+    private static final UserCache userCache = new UserCache();
+
+    // Guards user snapshot + journal files so reads never see a half-applied write
+    private static final Object userFileLock = new Object();
+
+    // Completed tasks beyond the most recent ones are moved to a mapped archive file on save
+    private static final int RECENT_COMPLETED_TASKS = 50;
+    private static final int ARCHIVE_THRESHOLD = RECENT_COMPLETED_TASKS * 2;
+
+    // Archived task count stored in each user's snapshot on disk (-1 if unknown). Guarded by userFileLock
+    private static final Map<String, Long> snapshotArchiveCounts = new HashMap<>();
+
+    // Imported users whose old task archive is deleted once their new snapshot is written. Guarded by userFileLock
+    private static final Set<String> archiveReplacements = new HashSet<>();
+
+    // User saves are written in the background so callers on the UI thread never block on disk
+    private static final UserSaveQueue saveQueue = new UserSaveQueue(DataManager::writeUser);
+
+    private static final UserRepository fileRepository = new FileUserRepository();
+    private static final UserRepository repository = createRepository();
+
     // Custom adapter for LocalDate serialization/deserialization
     private static class LocalDateAdapter implements JsonSerializer<LocalDate>, JsonDeserializer<LocalDate> {
         private final DateTimeFormatter formatter = DateTimeFormatter.ISO_LOCAL_DATE;
@@ -53,60 +128,506 @@ public class DataManager {
         }
     }
 
-    public static User loadUser(String username) {
-        File file = new File(USER_DIR + username + ".json");
-        if (!file.exists()) return null;
-
-        try (FileReader reader = new FileReader(file)) {
-            User user = gson.fromJson(reader, User.class);
-            System.out.println("Loaded user: " + username + " (XP: " + user.getXp() + ", Level: " + user.getLevel() + ", Coins: " + user.getCoins() + ")");
-            return user;
+    private static UserRepository createRepository() {
+        if (!"embedded".equalsIgnoreCase(System.getProperty(REPOSITORY_PROPERTY, "files"))) {
+            return fileRepository;
+        }
+        try {
+            return new EmbeddedUserRepository(USER_DIR);
         } catch (IOException e) {
+            System.err.println("Could not open embedded user database, using user files instead");
             e.printStackTrace();
-            return null;
+            return fileRepository;
+        }
+    }
+
+    public static User loadUser(String username) {
+        User user = repository.load(username);
+        if (user == null && repository != fileRepository) {
+            // Users saved before switching to the embedded store are moved over on first load
+            user = fileRepository.load(username);
+            if (user != null) {
+                repository.save(user);
+            }
+        }
+        if (user != null) {
+            user.clearDirtyStats(); // Loaders set the stats through setters
         }
+        return user;
     }
 
+    // The file store behind FileUserRepository
+    static User loadUserFile(String username) {
+        // Make sure a queued save for this user is on disk before reading it back
+        saveQueue.flush(username);
+
+        File file = snapshotFile(username);
+        if (file == null) return null;
+
+        synchronized (userFileLock) {
+            long stamp = fileStamp(username);
+            User cached = userCache.get(username, stamp);
+            if (cached != null) {
+                return cached;
+            }
+
+            try {
+                User user;
+                CRC32 crc = new CRC32();
+                try {
+                    user = readSnapshot(file, crc);
+                } catch (IOException e) {
+                    // Fail rather than load a damaged user, unless a snapshot in the other format is still around
+                    File other = file.getName().endsWith(UserBinaryFormat.EXTENSION) ? jsonFile(username) : binaryFile(username);
+                    if (!other.exists()) throw e;
+                    System.err.println("Could not read " + file.getPath() + ", loading " + other.getPath() + " instead: " + e.getMessage());
+                    crc.reset();
+                    user = readSnapshot(other, crc);
+                }
+                snapshotArchiveCounts.put(username, archiveCount(user));
+                if (user.getArchivedTaskCount() == null) {
+                    // Saved before the count was recorded, when archiving happened on load: the archive is already out of the user
+                    user.setArchivedTaskCount(TaskArchive.size(USER_DIR, username));
+                }
+                user = journal.replay(user, crc.getValue());
+                userCache.put(username, user, stamp);
+                System.out.println("Loaded user: " + username + " (XP: " + user.getXp() + ", Level: " + user.getLevel() + ", Coins: " + user.getCoins() + ")");
+                return user;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Queue a user to be saved. Repeated saves of the same user within a short
+     * window are coalesced into a single write on a background thread.
+     * @param user the user to save
+     */
     public static void saveUser(User user) {
-        try (FileWriter writer = new FileWriter(USER_DIR + user.getUsername() + ".json")) {
-            gson.toJson(user, writer);
-            System.out.println("Saved user: " + user.getUsername() + " (XP: " + user.getXp() + ", Level: " + user.getLevel() + ", Coins: " + user.getCoins() + ")");
-        } catch (IOException e) {
-            e.printStackTrace();
+        ProgressSync.record(user); // Hands the progress to the counters first; they are written off this thread
+        repository.save(user);
+    }
+
+    /**
+     * Save a user whose task list is its whole history (e.g. from an export file),
+     * replacing any archived tasks the user had here.
+     * @param user the user to save
+     */
+    static void importUser(User user) {
+        user.setArchivedTaskCount(0L);
+        if (repository != fileRepository) {
+            // The embedded store doesn't archive; the old archive goes once the import is written
+            saveUser(user);
+            if (repository.flush(5, TimeUnit.SECONDS)) {
+                synchronized (userFileLock) {
+                    deleteArchive(user.getUsername());
+                }
+            } else {
+                System.err.println("Keeping old task archive for " + user.getUsername() + " until the import is written");
+            }
+            return;
+        }
+        // writeUser removes the old archive once the new snapshot is on disk
+        synchronized (userFileLock) {
+            archiveReplacements.add(user.getUsername());
+        }
+        saveUser(user);
+    }
+
+    /**
+     * Write all queued user saves and credential changes and wait for them to finish.
+     * Call this before the application exits.
+     * @return true if everything was written in time
+     */
+    public static boolean flush() {
+        return flush(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Like flush(), waiting up to the given time for each of the user saves and the
+     * credential file. Saves whose write failed are retried and keep this from returning true.
+     * @return true if everything was written in time
+     */
+    public static boolean flush(long timeout, TimeUnit unit) {
+        boolean users = repository.flush(timeout, unit);
+        boolean passwords = credentials.flush(timeout, unit);
+        return users && passwords;
+    }
+
+    /**
+     * Wait until every user save queued so far has been written to disk.
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true if all queued saves were written in time
+     */
+    public static boolean awaitDurable(long timeout, TimeUnit unit) {
+        return repository.awaitDurable(timeout, unit);
+    }
+
+    /**
+     * @return the repository loadUser and saveUser go through, for queries
+     */
+    public static UserRepository getRepository() {
+        return repository;
+    }
+
+    public static UserSaveQueue getSaveQueue() {
+        return saveQueue;
+    }
+
+    public static UserCache getUserCache() {
+        return userCache;
+    }
+
+    private static void writeUser(User user) {
+        synchronized (userFileLock) {
+            try {
+                if (archiveReplacements.contains(user.getUsername())) {
+                    // Imported with its whole history: the old archive may only go once this is on disk
+                    writeSnapshot(user, BINARY_FORMAT);
+                    deleteArchive(user.getUsername());
+                    archiveReplacements.remove(user.getUsername());
+                } else {
+                    // A history that was never decoded hasn't changed, so there's nothing to archive
+                    boolean archived = user.isTaskHistoryLoaded() && archiveOldTasks(user);
+                    if (archived || !journal.append(user)) {
+                        // Full snapshot: compacts the journal and covers changes it can't express
+                        writeSnapshot(user, BINARY_FORMAT);
+                    }
+                }
+                userCache.put(user.getUsername(), user, fileStamp(user.getUsername()));
+                System.out.println("Saved user: " + user.getUsername() + " (XP: " + user.getXp() + ", Level: " + user.getLevel() + ", Coins: " + user.getCoins() + ")");
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // Counted and reported by the save queue
+            }
         }
     }
 
+    private static User readSnapshot(File file, CRC32 crc) throws IOException {
+        if (!file.getName().endsWith(UserBinaryFormat.EXTENSION)) {
+            return readJsonSnapshot(file.toPath(), crc);
+        }
+        byte[] bytes = Files.readAllBytes(file.toPath());
+        User user = UserBinaryFormat.decode(bytes);
+        crc.update(bytes);
+        return user;
+    }
+
+    /**
+     * Stream a JSON user file through a buffered channel, checksumming the bytes
+     * as they're read so the file is only read once.
+     * @param path the JSON snapshot
+     * @param crc receives the checksum of the whole file
+     * @return the user
+     * @throws IOException if the file can't be read or isn't a user
+     */
+    private static User readJsonSnapshot(Path path, CRC32 crc) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+             CheckedInputStream in = new CheckedInputStream(Channels.newInputStream(channel), crc)) {
+            User user = StreamingUserReader.read(gson,
+                    new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), 64 * 1024));
+            if (user == null) {
+                throw new IOException("Empty user file: " + path);
+            }
+            in.transferTo(OutputStream.nullOutputStream()); // Trailing whitespace still counts toward the checksum
+            return user;
+        }
+    }
+
+    // The Gson used for user files, for tools in this package
+    static Gson getGson() {
+        return gson;
+    }
+
+    private static void writeSnapshot(User user, boolean binary) throws IOException {
+        byte[] bytes;
+        if (binary) {
+            bytes = UserBinaryFormat.encode(user);
+        } else {
+            user.getTasks(); // Gson reads the field directly, so decode a lazy task history first
+            bytes = gson.toJson(user).getBytes(StandardCharsets.UTF_8);
+        }
+
+        String username = user.getUsername();
+        writeAtomically((binary ? binaryFile(username) : jsonFile(username)).toPath(), bytes);
+
+        // Only one snapshot per user, otherwise an old one could shadow the new one
+        File other = binary ? jsonFile(username) : binaryFile(username);
+        if (other.exists() && !other.delete()) {
+            System.err.println("Could not remove old snapshot: " + other.getPath());
+        }
+        journal.reset(user, checksum(bytes));
+        snapshotArchiveCounts.put(username, archiveCount(user));
+    }
+
+    /**
+     * Rewrite one user's snapshot in the given format, folding in any journal.
+     * @param username the user to convert
+     * @param binary true for the binary format, false for JSON
+     * @return true if the user existed and was converted
+     */
+    public static boolean convertUser(String username, boolean binary) {
+        User user = loadUserFile(username);
+        if (user == null) return false;
+
+        synchronized (userFileLock) {
+            try {
+                archiveOldTasks(user);
+                writeSnapshot(user, binary);
+                userCache.put(username, user, fileStamp(username));
+                return true;
+            } catch (IOException e) {
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Move old completed tasks out of the user and into their task archive,
+     * keeping the most recent ones so they still show up in the task list.
+     * Archiving starts once there are twice as many as are kept, so it happens
+     * in batches instead of on every save.
+     *
+     * The user's archived task count says how big the archive was when the user was
+     * saved. If the archive has grown since (a crash before the snapshot was rewritten,
+     * or a caller holding a copy from before the last archiving), that many of the
+     * oldest completed tasks are already archived and are dropped instead of archived again.
+     * @param user the user, with its task history loaded
+     * @return true if the archived task count no longer matches the snapshot on disk,
+     *         so a full snapshot has to be written
+     */
+    private static boolean archiveOldTasks(User user) throws IOException {
+        String username = user.getUsername();
+        long archiveSize = TaskArchive.size(USER_DIR, username);
+        Long savedCount = user.getArchivedTaskCount();
+
+        List<Task> completed = new ArrayList<>();
+        for (Task task : user.getTasks()) {
+            if (task.isCompleted()) completed.add(task);
+        }
+        // Completed tasks are moved to the end of the list as they're finished, so list order is completion order
+        List<Task> drop = new ArrayList<>();
+        if (savedCount != null && archiveSize > savedCount) {
+            List<Task> alreadyArchived = completed.subList(0, (int) Math.min(completed.size(), archiveSize - savedCount));
+            if (TaskArchive.open(USER_DIR, username).endsWith(alreadyArchived)) {
+                drop.addAll(alreadyArchived);
+            } else {
+                System.err.println("Task archive for " + username + " doesn't match its saved size, keeping tasks as they are");
+            }
+        }
+
+        int remaining = completed.size() - drop.size();
+        if (remaining > ARCHIVE_THRESHOLD) {
+            List<Task> oldest = completed.subList(drop.size(), completed.size() - RECENT_COMPLETED_TASKS);
+            // Archive first: if we crash before the snapshot is rewritten, its count tells the next save what's archived
+            archiveSize = TaskArchive.open(USER_DIR, username).append(oldest);
+            drop.addAll(oldest);
+            System.out.println("Archived " + oldest.size() + " completed tasks for " + username);
+        }
+
+        if (!drop.isEmpty()) {
+            Set<Task> archived = Collections.newSetFromMap(new IdentityHashMap<>());
+            archived.addAll(drop);
+            user.getTasks().removeIf(archived::contains);
+        }
+        user.setArchivedTaskCount(archiveSize);
+        Long onDisk = snapshotArchiveCounts.get(username);
+        return onDisk == null || onDisk != archiveSize;
+    }
+
+    // Caller holds userFileLock
+    private static void deleteArchive(String username) {
+        if (!TaskArchive.delete(USER_DIR, username)) {
+            System.err.println("Could not remove old task archive for: " + username);
+        }
+    }
+
+    private static long archiveCount(User user) {
+        return user.getArchivedTaskCount() != null ? user.getArchivedTaskCount() : -1;
+    }
+
+    /**
+     * Every task the user has, oldest archived tasks first, then the tasks on the user.
+     * Use this for statistics; the archived part is read from disk on each call.
+     * @param user the user
+     * @return a new list with the full task history
+     */
+    public static List<Task> getTaskHistory(User user) {
+        List<Task> history = new ArrayList<>();
+        if (user.getUsername() != null && TaskArchive.exists(USER_DIR, user.getUsername())) {
+            synchronized (userFileLock) {
+                try {
+                    TaskArchive.open(USER_DIR, user.getUsername()).forEach(history::add);
+                } catch (IOException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+        history.addAll(user.getTasks());
+        return history;
+    }
+
+    /**
+     * @return names of all users that have a snapshot in the data directory, including guests
+     */
+    public static List<String> listStoredUsers() {
+        Set<String> usernames = new TreeSet<>();
+        File[] files = new File(USER_DIR).listFiles();
+        if (files == null) return new ArrayList<>();
+
+        for (File file : files) {
+            String name = file.getName();
+            if (name.endsWith(".json") && !file.getPath().equals(new File(PASSWORD_FILE).getPath())) {
+                usernames.add(name.substring(0, name.length() - ".json".length()));
+            } else if (name.endsWith(UserBinaryFormat.EXTENSION)) {
+                usernames.add(name.substring(0, name.length() - UserBinaryFormat.EXTENSION.length()));
+            }
+        }
+        return new ArrayList<>(usernames);
+    }
+
+    static boolean hasUserFile(String username) {
+        return snapshotFile(username) != null;
+    }
+
+    private static File jsonFile(String username) {
+        return new File(USER_DIR + username + ".json");
+    }
+
+    private static File binaryFile(String username) {
+        return new File(USER_DIR + username + UserBinaryFormat.EXTENSION);
+    }
+
+    // The user's snapshot in the configured format, falling back to the other format for users not yet converted
+    private static File snapshotFile(String username) {
+        File preferred = BINARY_FORMAT ? binaryFile(username) : jsonFile(username);
+        if (preferred.exists()) return preferred;
+        File other = BINARY_FORMAT ? jsonFile(username) : binaryFile(username);
+        return other.exists() ? other : null;
+    }
+
+    /**
+     * Replace a file without ever leaving it half-written: the data goes to a
+     * temp file that is synced to disk and then renamed over the target.
+     * @param target the file to replace
+     * @param bytes the new contents
+     * @throws IOException if writing or renaming fails
+     */
+    static void writeAtomically(Path target, byte[] bytes) throws IOException {
+        Path temp = target.resolveSibling(target.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+
+        try {
+            Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    // Changes whenever the user's snapshot or journal is modified, including by other processes
+    private static long fileStamp(String username) {
+        File snapshot = snapshotFile(username);
+        File journalFile = new File(USER_DIR + username + ".journal");
+        long stamp = snapshot == null ? 0 : snapshot.lastModified();
+        stamp = stamp * 31 + (snapshot == null ? 0 : snapshot.length());
+        stamp = stamp * 31 + journalFile.lastModified();
+        stamp = stamp * 31 + journalFile.length();
+        return stamp;
+    }
+
+    private static long checksum(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
     public static void savePassword(String username, String password) {
-        userPasswords.put(username, password);
-        savePasswordMap();
+        // Skip rehashing (and rewriting users.json) when the password is unchanged
+        String stored = credentials.get(username);
+        if (stored != null && !passwordHasher.needsRehash(stored) && passwordHasher.verify(password, stored)) {
+            return;
+        }
+        credentials.put(username, passwordHasher.hash(password));
+    }
+
+    /**
+     * Replace every plaintext password left by older versions with a hash, so they don't
+     * wait in users.json for their user's next login. Hashing runs on the password
+     * worker pool and the file is written once when all of them are done.
+     */
+    private static void hashPlaintextPasswords() {
+        Map<String, String> plaintext = new HashMap<>();
+        credentials.snapshot().forEach((username, stored) -> {
+            if (stored != null && !PasswordHasher.isHashed(stored)) {
+                plaintext.put(username, stored);
+            }
+        });
+        if (plaintext.isEmpty()) return;
+
+        Map<String, String> hashed = new ConcurrentHashMap<>();
+        CompletableFuture<?>[] hashing = plaintext.entrySet().stream()
+                .map(entry -> CompletableFuture.runAsync(
+                        () -> hashed.put(entry.getKey(), passwordHasher.hash(entry.getValue())), passwordWorkers))
+                .toArray(CompletableFuture[]::new);
+        CompletableFuture.allOf(hashing).whenComplete((ignored, error) -> {
+            if (error != null) {
+                System.err.println("Could not hash every plaintext password: " + error.getMessage());
+            }
+            // A password changed meanwhile keeps its new value
+            int replaced = credentials.replaceAll(plaintext, hashed);
+            System.out.println("Hashed " + replaced + " plaintext password(s) from an older version");
+        });
+    }
+
+    /**
+     * Hash and store a password on the password worker pool, so the Swing thread
+     * never waits on the deliberately slow hash.
+     * @return future that completes once the password is stored
+     */
+    public static CompletableFuture<Void> savePasswordAsync(String username, String password) {
+        return CompletableFuture.runAsync(() -> savePassword(username, password), passwordWorkers);
     }
 
     public static boolean userExists(String username) {
-        return loadPasswordMap().containsKey(username);
+        return credentials.contains(username);
     }
 
+    /**
+     * Check a password. This is deliberately slow, so prefer verifyPasswordAsync
+     * on the Swing thread.
+     */
     public static boolean verifyPassword(String username, String input) {
-        String savedPassword = loadPasswordMap().get(username);
-        return input.equals(savedPassword);
-    }
+        String stored = credentials.get(username);
+        if (!passwordHasher.verify(input, stored)) {
+            return false;
+        }
 
-    private static Map<String, String> loadPasswordMap() {
-        File file = new File(PASSWORD_FILE);
-        if (!file.exists()) return new HashMap<>();
-        try (FileReader reader = new FileReader(file)) {
-            Type type = new TypeToken<Map<String, String>>() {}.getType();
-            return gson.fromJson(reader, type);
-        } catch (IOException e) {
-            e.printStackTrace();
-            return new HashMap<>();
+        // Upgrade plaintext passwords from older versions, or hashes made with an old cost
+        if (passwordHasher.needsRehash(stored)) {
+            credentials.put(username, passwordHasher.hash(input));
         }
+        return true;
     }
 
-    private static void savePasswordMap() {
-        try (FileWriter writer = new FileWriter(PASSWORD_FILE)) {
-            gson.toJson(userPasswords, writer);
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+    /**
+     * Check a password on the password worker pool.
+     * @return future that resolves to true if the user exists and the password matches
+     */
+    public static CompletableFuture<Boolean> verifyPasswordAsync(String username, String input) {
+        return CompletableFuture.supplyAsync(() -> verifyPassword(username, input), passwordWorkers);
+    }
+
+    public static CredentialStore getCredentialStore() {
+        return credentials;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,449 @@
+//util->EmbeddedUserRepository
+package util;
+
+import models.Task;
+import models.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * All users in one append-only file (data/users.db), with in-memory indexes so
+ * rankings and date queries don't need to decode every user.
+ *
+ * File layout: magic "SLDB", version, then records of
+ *   payload length, CRC32 of payload, payload
+ * where the payload is
+ *   username, level, xp, coins, totalCompletedTasks,
+ *   completion index: count, then (epoch day, task position) sorted by day,
+ *   binary user snapshot (see UserBinaryFormat)
+ * Saving a user appends a new record; the newest record for a username wins.
+ * A torn record at the end of the file is dropped on open, and the file is
+ * compacted once most of it is superseded records.
+ */
+public class EmbeddedUserRepository implements UserRepository {
+    public static final String FILE_NAME = "users.db";
+
+    private static final int MAGIC = 0x534C4442; // "SLDB"
+    private static final int VERSION = 1;
+    private static final int FILE_HEADER_BYTES = 8;
+    private static final int RECORD_HEADER_BYTES = 8;
+    private static final long COMPACT_MIN_BYTES = 1 << 20;
+    // The file is mapped this much at a time on open, so it can grow past what one mapping can address
+    private static final long MAP_WINDOW_BYTES = 64L << 20;
+
+    // Newest record for each user, with the stats and dates needed by queries
+    private static class Entry {
+        final String username;
+        final int level;
+        final int xp;
+        final int coins;
+        final int totalCompletedTasks;
+        final long offset;
+        final int length;
+        final long snapshotOffset;
+        final int snapshotLength;
+        final int[] completionDays;
+        final int[] completionTasks;
+
+        Entry(String username, int level, int xp, int coins, int totalCompletedTasks, long offset, int length,
+              long snapshotOffset, int snapshotLength, int[] completionDays, int[] completionTasks) {
+            this.username = username;
+            this.level = level;
+            this.xp = xp;
+            this.coins = coins;
+            this.totalCompletedTasks = totalCompletedTasks;
+            this.offset = offset;
+            this.length = length;
+            this.snapshotOffset = snapshotOffset;
+            this.snapshotLength = snapshotLength;
+            this.completionDays = completionDays;
+            this.completionTasks = completionTasks;
+        }
+    }
+
+    // Same order as UserRepository.RANKING, with the name as a tie breaker so the set keeps everyone
+    private static final Comparator<Entry> ENTRY_RANKING = Comparator
+            .comparingInt((Entry e) -> e.level).reversed()
+            .thenComparing(Comparator.comparingInt((Entry e) -> e.xp).reversed())
+            .thenComparing(Comparator.comparingInt((Entry e) -> e.coins).reversed())
+            .thenComparing(e -> e.username);
+
+    private final Path path;
+    private final String archiveDir;
+    private final Object lock = new Object();
+    private final Map<String, Entry> index = new HashMap<>();
+    private final TreeSet<Entry> ranking = new TreeSet<>(ENTRY_RANKING);
+    private final UserSaveQueue saveQueue = new UserSaveQueue(this::write);
+    private FileChannel channel;
+    private long deadBytes;
+
+    /**
+     * Open (or create) the store in a directory.
+     * @param dir data directory, ending in a separator
+     */
+    public EmbeddedUserRepository(String dir) throws IOException {
+        this.path = Path.of(dir, FILE_NAME);
+        this.archiveDir = dir;
+        open();
+    }
+
+    @Override
+    public User load(String username) {
+        saveQueue.flush(username);
+        synchronized (lock) {
+            Entry entry = index.get(username);
+            if (entry == null) return null;
+            try {
+                return UserBinaryFormat.decode(read(entry.snapshotOffset, entry.snapshotLength));
+            } catch (IOException e) {
+                e.printStackTrace();
+                return null;
+            }
+        }
+    }
+
+    @Override
+    public void save(User user) {
+        saveQueue.enqueue(user);
+    }
+
+    @Override
+    public boolean exists(String username) {
+        saveQueue.flush(username);
+        synchronized (lock) {
+            return index.containsKey(username);
+        }
+    }
+
+    @Override
+    public List<String> listUsers() {
+        saveQueue.flush();
+        synchronized (lock) {
+            return new ArrayList<>(new TreeSet<>(index.keySet()));
+        }
+    }
+
+    @Override
+    public List<Task> findTasksCompletedBetween(String username, LocalDate from, LocalDate to) {
+        List<Task> result = new ArrayList<>();
+        // Tasks moved out by the file store's archiving are still part of the history
+        if (TaskArchive.exists(archiveDir, username)) {
+            try {
+                TaskArchive.open(archiveDir, username).forEach(task -> {
+                    if (completedBetween(task, from, to)) result.add(task);
+                });
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        saveQueue.flush(username);
+        synchronized (lock) {
+            Entry entry = index.get(username);
+            if (entry == null) return result;
+
+            int start = lowerBound(entry.completionDays, (int) from.toEpochDay());
+            int end = lowerBound(entry.completionDays, (int) to.toEpochDay() + 1);
+            if (start >= end) return result; // Answered from the index alone
+
+            try {
+                List<Task> tasks = UserBinaryFormat.decode(read(entry.snapshotOffset, entry.snapshotLength)).getTasks();
+                for (int i = start; i < end; i++) {
+                    result.add(tasks.get(entry.completionTasks[i]));
+                }
+            } catch (IOException | IndexOutOfBoundsException e) {
+                e.printStackTrace();
+            }
+        }
+        result.sort(Comparator.comparing(Task::getCompletionDate));
+        return result;
+    }
+
+    @Override
+    public List<User> findTopUsers(int limit) {
+        saveQueue.flush();
+        List<User> top = new ArrayList<>();
+        synchronized (lock) {
+            for (Entry entry : ranking) {
+                if (top.size() >= limit) break;
+                User user = new User(entry.username);
+                user.setLevel(entry.level);
+                user.setXp(entry.xp);
+                user.setCoins(entry.coins);
+                user.setTotalCompletedTasks(entry.totalCompletedTasks);
+                top.add(user);
+            }
+        }
+        return top;
+    }
+
+    @Override
+    public boolean flush(long timeout, TimeUnit unit) {
+        return saveQueue.flush(timeout, unit);
+    }
+
+    @Override
+    public boolean awaitDurable(long timeout, TimeUnit unit) {
+        return saveQueue.awaitDurable(timeout, unit);
+    }
+
+    @Override
+    public long getFailedSaves() {
+        return saveQueue.getWritesFailed();
+    }
+
+    private void write(User user) {
+        List<Task> tasks = user.getTasks();
+        byte[] snapshot = UserBinaryFormat.encode(user);
+
+        // Completed tasks sorted by date, so a date range is two binary searches
+        List<int[]> completions = new ArrayList<>();
+        for (int i = 0; i < tasks.size(); i++) {
+            Task task = tasks.get(i);
+            if (task.isCompleted() && task.getCompletionDate() != null) {
+                completions.add(new int[]{(int) task.getCompletionDate().toEpochDay(), i});
+            }
+        }
+        completions.sort(Comparator.comparingInt(c -> c[0]));
+
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(snapshot.length + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            byte[] name = user.getUsername().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+            out.writeInt(user.getLevel());
+            out.writeInt(user.getXp());
+            out.writeInt(user.getCoins());
+            out.writeInt(user.getTotalCompletedTasks());
+            out.writeInt(completions.size());
+            for (int[] completion : completions) {
+                out.writeInt(completion[0]);
+                out.writeInt(completion[1]);
+            }
+            out.writeInt(snapshot.length);
+            out.write(snapshot);
+            out.flush();
+            byte[] payload = bytes.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER_BYTES + payload.length);
+            record.putInt(payload.length);
+            record.putInt((int) crc.getValue());
+            record.put(payload);
+            record.flip();
+
+            synchronized (lock) {
+                long offset = channel.size();
+                try {
+                    while (record.hasRemaining()) {
+                        channel.write(record, offset + record.position());
+                    }
+                    channel.force(false);
+                } catch (IOException e) {
+                    // A half record would stop open() here and cost every record appended after it
+                    channel.truncate(offset);
+                    throw e;
+                }
+                index(parse(ByteBuffer.wrap(payload), offset, RECORD_HEADER_BYTES + payload.length));
+                try {
+                    compactIfNeeded();
+                } catch (IOException e) {
+                    // The save itself is on disk; compaction is tried again on the next one
+                    System.err.println("Could not compact " + path + ": " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // Counted and reported by the save queue
+        }
+    }
+
+    private void open() throws IOException {
+        load();
+        // A file left mostly superseded by an earlier run shrinks now rather than on the next save
+        compactIfNeeded();
+    }
+
+    // Open the file and rebuild the indexes from it
+    private void load() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index.clear();
+        ranking.clear();
+        deadBytes = 0;
+
+        long size = channel.size();
+        if (size < FILE_HEADER_BYTES) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            channel.truncate(0);
+            channel.write(header, 0);
+            channel.force(true);
+            return;
+        }
+
+        MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, MAP_WINDOW_BYTES));
+        long windowStart = 0;
+        if (window.getInt(0) != MAGIC || window.getInt(4) != VERSION) {
+            throw new IOException("Unrecognized user database: " + path);
+        }
+
+        long offset = FILE_HEADER_BYTES;
+        while (offset + RECORD_HEADER_BYTES <= size) {
+            if (offset + RECORD_HEADER_BYTES > windowStart + window.capacity()) {
+                windowStart = offset;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart, Math.min(size - windowStart, MAP_WINDOW_BYTES));
+            }
+            int length = window.getInt(Math.toIntExact(offset - windowStart));
+            int expectedCrc = window.getInt(Math.toIntExact(offset - windowStart + 4));
+            if (length < 0 || length > Integer.MAX_VALUE - RECORD_HEADER_BYTES
+                    || offset + RECORD_HEADER_BYTES + length > size) break;
+
+            long recordEnd = offset + RECORD_HEADER_BYTES + length;
+            if (recordEnd > windowStart + window.capacity()) {
+                // Remap from this record so all of it is addressable, however big it is
+                windowStart = offset;
+                window = channel.map(FileChannel.MapMode.READ_ONLY, windowStart,
+                        Math.max(RECORD_HEADER_BYTES + length, Math.min(size - windowStart, MAP_WINDOW_BYTES)));
+            }
+            ByteBuffer payload = window.slice(Math.toIntExact(offset - windowStart + RECORD_HEADER_BYTES), length);
+            CRC32 crc = new CRC32();
+            crc.update(payload.duplicate());
+            if ((int) crc.getValue() != expectedCrc) break;
+
+            index(parse(payload, offset, RECORD_HEADER_BYTES + length));
+            offset = recordEnd;
+        }
+
+        if (offset < size) {
+            // Torn write from a crash; everything before it is intact
+            System.err.println("Dropping " + (size - offset) + " damaged bytes at the end of " + path);
+            channel.truncate(offset);
+            channel.force(true);
+        }
+    }
+
+    private Entry parse(ByteBuffer payload, long offset, int length) throws IOException {
+        try {
+            byte[] name = new byte[payload.getInt()];
+            payload.get(name);
+            String username = new String(name, StandardCharsets.UTF_8);
+
+            int level = payload.getInt();
+            int xp = payload.getInt();
+            int coins = payload.getInt();
+            int totalCompletedTasks = payload.getInt();
+
+            int completionCount = payload.getInt();
+            int[] days = new int[completionCount];
+            int[] tasks = new int[completionCount];
+            for (int i = 0; i < completionCount; i++) {
+                days[i] = payload.getInt();
+                tasks[i] = payload.getInt();
+            }
+
+            int snapshotLength = payload.getInt();
+            long snapshotOffset = offset + RECORD_HEADER_BYTES + payload.position();
+            return new Entry(username, level, xp, coins, totalCompletedTasks, offset, length,
+                    snapshotOffset, snapshotLength, days, tasks);
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed record at offset " + offset + " in " + path, e);
+        }
+    }
+
+    private void index(Entry entry) {
+        Entry previous = index.put(entry.username, entry);
+        if (previous != null) {
+            ranking.remove(previous);
+            deadBytes += previous.length;
+        }
+        ranking.add(entry);
+    }
+
+    // Rewrite the file with only the newest record per user once superseded records dominate it
+    private void compactIfNeeded() throws IOException {
+        long liveBytes = channel.size() - FILE_HEADER_BYTES - deadBytes;
+        if (deadBytes < COMPACT_MIN_BYTES || deadBytes < liveBytes) return;
+
+        Path temp = path.resolveSibling(FILE_NAME + ".tmp");
+        try (FileChannel out = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES).putInt(MAGIC).putInt(VERSION);
+            header.flip();
+            out.write(header);
+            List<Entry> entries = new ArrayList<>(index.values());
+            entries.sort(Comparator.comparingLong(e -> e.offset));
+            for (Entry entry : entries) {
+                long copied = 0;
+                while (copied < entry.length) {
+                    copied += channel.transferTo(entry.offset + copied, entry.length - copied, out);
+                }
+            }
+            out.force(true);
+        }
+
+        long before = liveBytes + deadBytes;
+        channel.close();
+        try {
+            try {
+                Files.move(temp, path, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING);
+            }
+            load();
+        } catch (IOException e) {
+            // Whichever file is at path now (old or compacted) has every live record, so keep using it
+            if (channel.isOpen()) {
+                channel.close();
+            }
+            load();
+            throw e;
+        }
+        System.out.println("Compacted " + path + ": " + before + " -> " + (channel.size() - FILE_HEADER_BYTES) + " bytes");
+    }
+
+    private byte[] read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of " + path);
+            }
+        }
+        return buffer.array();
+    }
+
+    private static boolean completedBetween(Task task, LocalDate from, LocalDate to) {
+        LocalDate date = task.getCompletionDate();
+        return task.isCompleted() && date != null && !date.isBefore(from) && !date.isAfter(to);
+    }
+
+    // First index whose value is >= key
+    private static int lowerBound(int[] values, int key) {
+        int index = Arrays.binarySearch(values, key);
+        if (index < 0) return -index - 1;
+        while (index > 0 && values[index - 1] == key) index--;
+        return index;
+    }
+}
@@ -0,0 +1,240 @@
+//firebase->FakeRealtimeDatabase
+package firebase;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * In-process stand-in for the Realtime Database, for running the app offline and
+ * for load tests. Data lives in memory. Each operation answers after a simulated
+ * round trip (latencyMs, plus up to half again of random jitter) and fails with an
+ * IOException at the given rate. Like the real database, numbers come back as
+ * Long/Double, empty locations as null, ServerValue.TIMESTAMP becomes the current
+ * time, and an update may not contain a path together with one of its parents.
+ */
+public class FakeRealtimeDatabase implements RealtimeBackend {
+    private final long latencyMs;
+    private final double failureRate;
+    private final ScheduledExecutorService network = Executors.newScheduledThreadPool(2, r -> {
+        Thread t = new Thread(r, "fake-realtime-db");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // The whole database; guarded by this
+    private final Map<String, Object> root = new HashMap<>();
+
+    private final AtomicLong reads = new AtomicLong();
+    private final AtomicLong updates = new AtomicLong();
+    private final AtomicLong transactions = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+
+    /**
+     * @param latencyMs simulated round trip time
+     * @param failureRate fraction of operations (0 to 1) that fail with a simulated network error
+     */
+    public FakeRealtimeDatabase(long latencyMs, double failureRate) {
+        this.latencyMs = latencyMs;
+        this.failureRate = failureRate;
+    }
+
+    @Override
+    public CompletableFuture<Object> read(String path) {
+        reads.incrementAndGet();
+        return respond(() -> {
+            synchronized (this) {
+                return copy(get(segments(path)));
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> update(Map<String, Object> updates) {
+        this.updates.incrementAndGet();
+        // Firebase rejects these before sending anything
+        String invalid = RealtimeBackend.invalidPath(updates.keySet());
+        if (invalid != null) {
+            return CompletableFuture.failedFuture(new RejectedException("Invalid path: " + invalid, null));
+        }
+        Set<String> paths = new HashSet<>();
+        for (String path : updates.keySet()) {
+            paths.add(String.join("/", segments(path)));
+        }
+        for (String path : paths) {
+            for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+                if (paths.contains(path.substring(0, slash))) {
+                    return CompletableFuture.failedFuture(new RejectedException(
+                            "Path " + path.substring(0, slash) + " is an ancestor of " + path, null));
+                }
+            }
+        }
+        return respond(() -> {
+            synchronized (this) {
+                for (Map.Entry<String, Object> entry : updates.entrySet()) {
+                    set(segments(entry.getKey()), normalize(entry.getValue()));
+                }
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> transaction(String path, Function<Object, Object> update) {
+        transactions.incrementAndGet();
+        return respond(() -> {
+            synchronized (this) {
+                Object value = update.apply(copy(get(segments(path))));
+                if (value == ABORT) {
+                    return false;
+                }
+                set(segments(path), normalize(value));
+                return true;
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> respond(Callable<T> operation) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = latencyMs + (latencyMs > 1 ? random.nextLong(latencyMs / 2 + 1) : 0);
+        boolean fail = random.nextDouble() < failureRate;
+        network.schedule(() -> {
+            if (future.isDone()) return; // Cancelled by the caller
+            if (fail) {
+                failures.incrementAndGet();
+                future.completeExceptionally(new IOException("Simulated network failure"));
+                return;
+            }
+            try {
+                future.complete(operation.call());
+            } catch (Exception e) {
+                future.completeExceptionally(e);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+        return future;
+    }
+
+    private static String[] segments(String path) {
+        String trimmed = path.replaceAll("^/+|/+$", "");
+        return trimmed.isEmpty() ? new String[0] : trimmed.split("/+");
+    }
+
+    // Caller holds lock
+    private Object get(String[] path) {
+        Object node = root;
+        for (String key : path) {
+            if (!(node instanceof Map)) return null;
+            node = ((Map<?, ?>) node).get(key);
+        }
+        return node;
+    }
+
+    // Caller holds lock; value is already normalized
+    @SuppressWarnings("unchecked")
+    private void set(String[] path, Object value) {
+        if (path.length == 0) {
+            root.clear();
+            if (value instanceof Map) root.putAll((Map<String, Object>) value);
+            return;
+        }
+        List<Map<String, Object>> parents = new ArrayList<>(path.length);
+        Map<String, Object> node = root;
+        for (int i = 0; i < path.length - 1; i++) {
+            parents.add(node);
+            Object child = node.get(path[i]);
+            if (!(child instanceof Map)) {
+                if (value == null) return; // Nothing to remove
+                child = new HashMap<String, Object>();
+                node.put(path[i], child);
+            }
+            node = (Map<String, Object>) child;
+        }
+        parents.add(node);
+
+        if (value != null) {
+            node.put(path[path.length - 1], value);
+            return;
+        }
+        node.remove(path[path.length - 1]);
+        // Locations with no children don't exist, so prune empty parents
+        for (int i = path.length - 1; i > 0 && parents.get(i).isEmpty(); i--) {
+            parents.get(i - 1).remove(path[i - 1]);
+        }
+    }
+
+    // Store values the way Firebase returns them
+    private static Object normalize(Object value) {
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            if (map.size() == 1 && "timestamp".equals(map.get(".sv"))) {
+                return System.currentTimeMillis(); // ServerValue.TIMESTAMP
+            }
+            Map<String, Object> copy = new HashMap<>();
+            for (Map.Entry<?, ?> entry : map.entrySet()) {
+                Object child = normalize(entry.getValue());
+                if (child != null) {
+                    copy.put(String.valueOf(entry.getKey()), child);
+                }
+            }
+            return copy.isEmpty() ? null : copy;
+        }
+        if (value instanceof List) {
+            Map<String, Object> copy = new HashMap<>();
+            List<?> list = (List<?>) value;
+            for (int i = 0; i < list.size(); i++) {
+                Object child = normalize(list.get(i));
+                if (child != null) {
+                    copy.put(String.valueOf(i), child);
+                }
+            }
+            return copy.isEmpty() ? null : copy;
+        }
+        if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Float) {
+            return ((Float) value).doubleValue();
+        }
+        return value;
+    }
+
+    // Readers get their own copy, as they would from the network
+    private static Object copy(Object value) {
+        if (!(value instanceof Map)) return value;
+        Map<String, Object> copy = new HashMap<>();
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+            copy.put(String.valueOf(entry.getKey()), copy(entry.getValue()));
+        }
+        return copy;
+    }
+
+    public long getReads() {
+        return reads.get();
+    }
+
+    public long getUpdates() {
+        return updates.get();
+    }
+
+    public long getTransactions() {
+        return transactions.get();
+    }
+
+    // Operations failed on purpose (failureRate)
+    public long getFailures() {
+        return failures.get();
+    }
+}
@@ -0,0 +1,85 @@
+//util->FileUserRepository
+package util;
+
+import models.Task;
+import models.User;
+
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The original store: one snapshot file per user in data/, plus its journal
+ * and task archive. Queries have no index, so they load every user they look at.
+ */
+public class FileUserRepository implements UserRepository {
+    @Override
+    public User load(String username) {
+        return DataManager.loadUserFile(username);
+    }
+
+    @Override
+    public void save(User user) {
+        DataManager.getSaveQueue().enqueue(user);
+    }
+
+    @Override
+    public boolean exists(String username) {
+        return DataManager.hasUserFile(username);
+    }
+
+    @Override
+    public List<String> listUsers() {
+        return DataManager.listStoredUsers();
+    }
+
+    @Override
+    public List<Task> findTasksCompletedBetween(String username, LocalDate from, LocalDate to) {
+        List<Task> result = new ArrayList<>();
+        User user = load(username);
+        if (user == null) return result;
+
+        for (Task task : DataManager.getTaskHistory(user)) {
+            LocalDate date = task.getCompletionDate();
+            if (task.isCompleted() && date != null && !date.isBefore(from) && !date.isAfter(to)) {
+                result.add(task);
+            }
+        }
+        result.sort(Comparator.comparing(Task::getCompletionDate));
+        return result;
+    }
+
+    @Override
+    public List<User> findTopUsers(int limit) {
+        List<User> users = new ArrayList<>();
+        for (String username : listUsers()) {
+            User user = load(username);
+            if (user == null) continue;
+            User stats = new User(user.getUsername());
+            stats.setLevel(user.getLevel());
+            stats.setXp(user.getXp());
+            stats.setCoins(user.getCoins());
+            stats.setTotalCompletedTasks(user.getTotalCompletedTasks());
+            users.add(stats);
+        }
+        users.sort(RANKING);
+        return new ArrayList<>(users.subList(0, Math.min(limit, users.size())));
+    }
+
+    @Override
+    public boolean flush(long timeout, TimeUnit unit) {
+        return DataManager.getSaveQueue().flush(timeout, unit);
+    }
+
+    @Override
+    public boolean awaitDurable(long timeout, TimeUnit unit) {
+        return DataManager.getSaveQueue().awaitDurable(timeout, unit);
+    }
+
+    @Override
+    public long getFailedSaves() {
+        return DataManager.getSaveQueue().getWritesFailed();
+    }
+}
@@ -2,12 +2,11 @@ package firebase;
 
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseAuthException;
-import com.google.firebase.auth.UserRecord;
 import com.google.firebase.auth.UserRecord.CreateRequest;
 import models.User;
 import util.DataManager;
+import util.SyncExecutor;
 
-import javax.swing.*;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
 
@@ -15,38 +14,23 @@ import java.util.concurrent.TimeUnit;
  * Handles Firebase Authentication for user accounts
  */
 public class FirebaseAuthService {
-    private FirebaseAuth auth;
     private static final int TIMEOUT_SECONDS = 5; // Reduced timeout for faster response
-    private boolean offlineMode = false;
+    private static final int SYNC_TIMEOUT_SECONDS = 3;
+    // How long a login or sign-up the user is waiting on gives Firebase to start before going offline
+    private static final int READY_TIMEOUT_SECONDS = 2;
+    // Background syncs wait long enough for a cold initialization
+    private static final int BACKGROUND_READY_TIMEOUT_SECONDS = 15;
 
-    public FirebaseAuthService() {
-        // Don't try to get Firebase Auth immediately - it might not be initialized
-        // Instead check if it's available when needed
-        checkFirebaseAvailability();
-    }
-
-    private void checkFirebaseAvailability() {
-        if (!FirebaseConfig.isInitialized()) {
-            // Set a shorter timeout for checking if Firebase is ready
-            CompletableFuture<Boolean> initFuture = FirebaseConfig.getInitializationFuture();
-            try {
-                Boolean initialized = initFuture.get(2, TimeUnit.SECONDS);
-                if (initialized && FirebaseConfig.getFirebaseAuth() != null) {
-                    this.auth = FirebaseConfig.getFirebaseAuth();
-                    this.offlineMode = false;
-                } else {
-                    this.offlineMode = true;
-                }
-            } catch (Exception e) {
-                System.err.println("Firebase not ready, using offline mode: " + e.getMessage());
-                this.offlineMode = true;
-            }
-        } else if (FirebaseConfig.getFirebaseAuth() != null) {
-            this.auth = FirebaseConfig.getFirebaseAuth();
-            this.offlineMode = false;
-        } else {
-            this.offlineMode = true;
-        }
+    /**
+     * Firebase Auth once Firebase is ready, or null if it isn't available (offline).
+     * The first call starts initializing Firebase in the background; nothing here blocks.
+     * @param timeoutSeconds how long to wait for Firebase before treating it as unavailable
+     */
+    private static CompletableFuture<FirebaseAuth> auth(int timeoutSeconds) {
+        // thenApply gives us our own future, so the timeout doesn't complete FirebaseConfig's
+        return FirebaseConfig.ready()
+                .thenApply(ready -> ready ? FirebaseConfig.getFirebaseAuth() : null)
+                .completeOnTimeout(null, timeoutSeconds, TimeUnit.SECONDS);
     }
 
     /**
@@ -57,92 +41,65 @@ public class FirebaseAuthService {
      * @return CompletableFuture that resolves to true if successful, false otherwise
      */
     public CompletableFuture<Boolean> createUser(String username, String password) {
-        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        // Start Firebase while the password is hashed
+        FirebaseConfig.ready();
 
-        // Create the local user data immediately for better responsiveness
+        // Create the local user data first; the password is hashed off the calling thread
+        CompletableFuture<Boolean> createdLocally;
         if (!DataManager.userExists(username)) {
             User newUser = new User(username);
             DataManager.saveUser(newUser);
-            DataManager.savePassword(username, password);
+            createdLocally = DataManager.savePasswordAsync(username, password).thenApply(v -> true);
+        } else {
+            createdLocally = CompletableFuture.completedFuture(false);
+        }
 
-            // If we're in offline mode, complete successfully right away
-            if (offlineMode) {
-                SwingUtilities.invokeLater(() -> {
-                    future.complete(true);
-                });
-                return future;
+        return createdLocally.thenCompose(local -> auth(READY_TIMEOUT_SECONDS).thenCompose(auth -> {
+            // Offline: the local account is all there is
+            if (auth == null) {
+                return CompletableFuture.completedFuture(local);
             }
-        } else if (offlineMode) {
-            // User already exists locally and we're offline
-            SwingUtilities.invokeLater(() -> {
-                future.complete(false);
-            });
-            return future;
-        }
+            return createFirebaseUser(auth, username, password);
+        }));
+    }
 
-        // Only try Firebase operations if we're not in offline mode
-        if (!offlineMode && auth != null) {
-            // Create a separate thread for Firebase operations to avoid blocking UI
-            new Thread(() -> {
-                try {
-                    // First check if user already exists in Firebase
-                    try {
-                        UserRecord userRecord = auth.getUserByEmail(username + "@studyleveling.com");
-                        if (userRecord != null) {
-                            future.complete(false);
-                            return;
-                        }
-                    } catch (FirebaseAuthException e) {
-                        // User doesn't exist, which is what we want for new sign-ups
+    private CompletableFuture<Boolean> createFirebaseUser(FirebaseAuth auth, String username, String password) {
+        // First check if user already exists in Firebase; a lookup failure means it doesn't
+        return SyncExecutor.from(auth.getUserByEmailAsync(email(username)))
+                .handle((userRecord, error) -> error == null && userRecord != null)
+                .thenCompose(existsInFirebase -> {
+                    if (existsInFirebase) {
+                        return CompletableFuture.completedFuture(false);
                     }
 
                     // Create user in Firebase Authentication
                     // We're using email+password auth, but using username as the email prefix
                     CreateRequest request = new CreateRequest()
-                            .setEmail(username + "@studyleveling.com")
+                            .setEmail(email(username))
                             .setPassword(password)
                             .setDisplayName(username);
 
-                    // Attempt to create user in Firebase (this might be slow)
-                    UserRecord userRecord = auth.createUser(request);
-
-                    // Also upload user stats to Firebase for global leaderboard
-                    // Do this in a separate thread to avoid slowing down the sign-up process
-                    new Thread(() -> {
-                        try {
-                            User user = DataManager.loadUser(username);
-                            if (user != null) {
-                                util.FirebaseManager.uploadUserStats(user);
-                            }
-                        } catch (Exception e) {
-                            System.err.println("Error uploading user stats: " + e.getMessage());
-                            // Non-critical error, user can still use the app
-                        }
-                    }).start();
-
-                    future.complete(true);
-                } catch (FirebaseAuthException e) {
-                    System.err.println("Firebase Auth Error: " + e.getMessage());
-                    // We already created the local account, so still consider it a success
-                    future.complete(true);
-                }
-            }).start();
-        }
-
-        // Add timeout handling
-        CompletableFuture<Boolean> timeoutFuture = new CompletableFuture<>();
-        new Thread(() -> {
-            try {
-                Boolean result = future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                timeoutFuture.complete(result);
-            } catch (Exception e) {
-                System.err.println("Firebase operation timed out: " + e.getMessage());
-                // We already created the local account, so consider it a success
-                timeoutFuture.complete(true);
-            }
-        }).start();
-
-        return timeoutFuture;
+                    return SyncExecutor.from(auth.createUserAsync(request))
+                            .handle((userRecord, error) -> {
+                                if (error != null) {
+                                    System.err.println("Firebase Auth Error: " + SyncExecutor.unwrap(error).getMessage());
+                                } else {
+                                    // Also upload user stats to Firebase for global leaderboard
+                                    User user = DataManager.loadUser(username);
+                                    if (user != null) {
+                                        util.FirebaseManager.uploadUserStats(user, true);
+                                    }
+                                }
+                                // We already created the local account, so still consider it a success
+                                return true;
+                            });
+                })
+                .orTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .exceptionally(e -> {
+                    System.err.println("Firebase operation timed out: " + SyncExecutor.unwrap(e));
+                    // We already created the local account, so consider it a success
+                    return true;
+                });
     }
 
     /**
@@ -153,142 +110,98 @@ public class FirebaseAuthService {
      * @return CompletableFuture that resolves to true if credentials are valid, false otherwise
      */
     public CompletableFuture<Boolean> verifyCredentials(String username, String password) {
-        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        // Start Firebase while the password is hashed; a local match doesn't wait for it
+        FirebaseConfig.ready();
+
+        // Password hashing is slow on purpose, so check the local password off the calling thread
+        return DataManager.verifyPasswordAsync(username, password)
+                .thenCompose(validLocally -> verifyCredentials(username, password, validLocally));
+    }
 
-        // Try offline authentication first - this is very fast
-        if (DataManager.userExists(username) && DataManager.verifyPassword(username, password)) {
+    private CompletableFuture<Boolean> verifyCredentials(String username, String password, boolean validLocally) {
+        // Try offline authentication first
+        if (validLocally) {
             // User exists locally and password is valid
             System.out.println("User authenticated locally: " + username);
 
             // If online, sync with Firebase in the background
-            if (!offlineMode && auth != null) {
-                new Thread(() -> {
-                    try {
-                        User user = DataManager.loadUser(username);
-                        if (user != null) {
-                            // Upload current stats to ensure they're saved to Firebase
-                            util.FirebaseManager.uploadUserStats(user);
-                        }
-                    } catch (Exception e) {
-                        System.err.println("Error syncing user data with Firebase: " + e.getMessage());
+            auth(BACKGROUND_READY_TIMEOUT_SECONDS).thenAccept(auth -> {
+                if (auth == null) return;
+                SyncExecutor.run(() -> {
+                    User user = DataManager.loadUser(username);
+                    if (user != null) {
+                        // Take in progress made on other devices, then upload the merged stats
+                        util.FirebaseManager.syncUserStatsAsync(user);
                     }
-                }).start();
-            }
-
-            future.complete(true);
-            return future;
-        }
-
-        // If we're offline and the user doesn't exist locally, we can't authenticate
-        if (offlineMode) {
-            future.complete(false);
-            return future;
+                }).exceptionally(e -> {
+                    System.err.println("Error syncing user data with Firebase: " + SyncExecutor.unwrap(e).getMessage());
+                    return null;
+                });
+            });
+            return CompletableFuture.completedFuture(true);
         }
 
-        // If offline auth fails and Firebase is available, try Firebase Authentication
-        if (!offlineMode && auth != null) {
-            new Thread(() -> {
-                try {
-                    // Verify if user exists in Firebase
-                    try {
-                        UserRecord userRecord = auth.getUserByEmail(username + "@studyleveling.com");
-                        if (userRecord != null) {
-                            // User exists in Firebase, but either doesn't exist locally or password is different
-                            // IMPORTANT: We need to be careful not to overwrite existing data
-
-                            if (!DataManager.userExists(username)) {
-                                System.out.println("User exists in Firebase but not locally. Creating local data for: " + username);
-
-                                // Create local user with minimal data - we'll download the rest from Firebase
-                                User newUser = new User(username);
-                                // Don't save yet - wait for Firebase data
-
-                                // Sync with Firebase first, then save the user
-                                // This ensures we don't create a blank user that overwrites Firebase data
-                                CompletableFuture<Boolean> syncFuture = new CompletableFuture<>();
-
-                                new Thread(() -> {
-                                    try {
-                                        System.out.println("Downloading user stats from Firebase for: " + username);
-                                        util.FirebaseManager.downloadUserStats(newUser);
-
-                                        // Now save the user with downloaded data
-                                        DataManager.saveUser(newUser);
-                                        DataManager.savePassword(username, password);
-
-                                        syncFuture.complete(true);
-                                    } catch (Exception e) {
-                                        System.err.println("Error downloading user stats: " + e.getMessage());
-
-                                        // If download fails, still save minimal user data
-                                        DataManager.saveUser(newUser);
-                                        DataManager.savePassword(username, password);
-
-                                        syncFuture.complete(false);
-                                    }
-                                }).start();
+        return auth(READY_TIMEOUT_SECONDS).thenCompose(auth -> {
+            // If we're offline and local auth failed, we can't authenticate
+            if (auth == null) {
+                return CompletableFuture.completedFuture(false);
+            }
+            return verifyFirebaseUser(auth, username, password);
+        });
+    }
 
-                                // Wait for sync to complete with a short timeout
-                                try {
-                                    Boolean syncResult = syncFuture.get(3, TimeUnit.SECONDS);
-                                    System.out.println("Firebase sync result: " + syncResult);
-                                } catch (Exception e) {
-                                    System.err.println("Firebase sync timed out: " + e.getMessage());
-                                }
-                            } else {
-                                // User exists locally but password might have changed on another device
-                                // Update the password to keep in sync
-                                DataManager.savePassword(username, password);
+    private CompletableFuture<Boolean> verifyFirebaseUser(FirebaseAuth auth, String username, String password) {
+        // Local auth failed and Firebase is available, so try Firebase Authentication
+        return SyncExecutor.from(auth.getUserByEmailAsync(email(username)))
+                .thenCompose(userRecord -> {
+                    if (userRecord == null) {
+                        return CompletableFuture.completedFuture(false);
+                    }
+                    // User exists in Firebase, but either doesn't exist locally or password is different
+                    // IMPORTANT: We need to be careful not to overwrite existing data
+
+                    if (!DataManager.userExists(username)) {
+                        System.out.println("User exists in Firebase but not locally. Creating local data for: " + username);
+
+                        // Download stats before saving, so a blank local user never overwrites Firebase data
+                        User newUser = new User(username);
+                        System.out.println("Downloading user stats from Firebase for: " + username);
+                        return util.FirebaseManager.downloadUserStatsAsync(newUser)
+                                .completeOnTimeout(false, SYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                                .thenApplyAsync(synced -> {
+                                    System.out.println("Firebase sync result: " + synced);
+                                    // If download fails or times out, still save minimal user data
+                                    DataManager.saveUser(newUser);
+                                    DataManager.savePassword(username, password);
+                                    return true;
+                                }, SyncExecutor.executor());
+                    }
 
-                                // Also sync local data with Firebase in the background
-                                new Thread(() -> {
-                                    try {
-                                        User existingUser = DataManager.loadUser(username);
-                                        if (existingUser != null) {
-                                            // First download latest stats from Firebase
-                                            util.FirebaseManager.downloadUserStats(existingUser);
-                                            // Then save the updated user
-                                            DataManager.saveUser(existingUser);
-                                        }
-                                    } catch (Exception e) {
-                                        System.err.println("Error syncing existing user with Firebase: " + e.getMessage());
-                                    }
-                                }).start();
-                            }
+                    // User exists locally but password might have changed on another device
+                    // Update the password to keep in sync
+                    DataManager.savePassword(username, password);
 
-                            // Authenticate the user
-                            future.complete(true);
-                        } else {
-                            future.complete(false);
-                        }
-                    } catch (FirebaseAuthException e) {
+                    // Also merge the latest stats from Firebase in the background; they're saved when they arrive
+                    User existingUser = DataManager.loadUser(username);
+                    if (existingUser != null) {
+                        util.FirebaseManager.syncUserStatsAsync(existingUser);
+                    }
+                    return CompletableFuture.completedFuture(true);
+                })
+                .orTimeout(TIMEOUT_SECONDS, TimeUnit.SECONDS)
+                .exceptionallyAsync(e -> {
+                    Throwable cause = SyncExecutor.unwrap(e);
+                    if (cause instanceof FirebaseAuthException) {
                         // User doesn't exist in Firebase
-                        future.complete(false);
+                        return false;
                     }
-                } catch (Exception e) {
-                    System.err.println("Firebase Auth Error: " + e.getMessage());
-                    // If Firebase fails, fall back to local auth
-                    future.complete(DataManager.verifyPassword(username, password));
-                }
-            }).start();
-        } else {
-            // Firebase not available, and local auth failed
-            future.complete(false);
-        }
-
-        // Add timeout handling
-        CompletableFuture<Boolean> timeoutFuture = new CompletableFuture<>();
-        new Thread(() -> {
-            try {
-                Boolean result = future.get(TIMEOUT_SECONDS, TimeUnit.SECONDS);
-                timeoutFuture.complete(result);
-            } catch (Exception e) {
-                System.err.println("Firebase operation timed out: " + e.getMessage());
-                // If timeout, check if we can authenticate locally
-                timeoutFuture.complete(DataManager.verifyPassword(username, password));
-            }
-        }).start();
+                    // If Firebase fails or times out, fall back to local auth
+                    System.err.println("Firebase Auth Error: " + cause);
+                    return DataManager.verifyPassword(username, password);
+                }, SyncExecutor.executor());
+    }
 
-        return timeoutFuture;
+    private static String email(String username) {
+        return username + "@studyleveling.com";
     }
 }
@@ -5,21 +5,76 @@ import com.google.auth.oauth2.GoogleCredentials;
 import com.google.firebase.FirebaseApp;
 import com.google.firebase.FirebaseOptions;
 import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.ValueEventListener;
 import java.io.InputStream;
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
+/**
+ * Firebase setup. Nothing is initialized until something first needs Firebase:
+ * ready() starts initialization on a background thread and returns a future that
+ * every firebase.* class waits on (asynchronously) before touching the SDK, so a
+ * session that never goes online never pays for it. Once initialized, the database
+ * connection is opened right away so the first real read doesn't wait for it.
+ */
 public class FirebaseConfig {
     private static FirebaseAuth firebaseAuth;
     private static final AtomicBoolean isInitialized = new AtomicBoolean(false);
+    private static final AtomicBoolean initStarted = new AtomicBoolean(false);
     private static final CompletableFuture<Boolean> initializationFuture = new CompletableFuture<>();
+    private static final CompletableFuture<Void> startedFuture = new CompletableFuture<>();
     private static final int CONNECTION_TIMEOUT_MS = 5000; // 5 seconds timeout
 
-    public static void initialize() {
-        if (isInitialized.get()) {
-            return; // Already initialized
+    // -1 until known
+    private static volatile long initTimeMs = -1;
+    private static volatile long connectTimeMs = -1;
+    private static volatile boolean connected = false;
+    private static final List<Consumer<Boolean>> connectionListeners = new CopyOnWriteArrayList<>();
+
+    // "firebase" (default) or "fake" for the in-process FakeRealtimeDatabase
+    public static final String BACKEND_PROPERTY = "studyleveling.realtime.backend";
+    private static volatile RealtimeBackend backend;
+
+    /**
+     * Start initializing Firebase in the background, if that hasn't happened yet.
+     * @return future that resolves to true once Firebase is ready, or false if it can't be used
+     */
+    public static CompletableFuture<Boolean> ready() {
+        if (initStarted.compareAndSet(false, true)) {
+            Thread initThread = new Thread(FirebaseConfig::initialize, "firebase-init");
+            initThread.setDaemon(true);
+            initThread.start();
+            startedFuture.complete(null);
+        }
+        return initializationFuture;
+    }
+
+    /**
+     * Wait for something else to start Firebase, without starting it. For background
+     * work (like replaying queued writes) that an offline session shouldn't pay for.
+     * @return future that completes once initialization has started
+     */
+    public static CompletableFuture<Void> whenStarted() {
+        return startedFuture.copy();
+    }
+
+    /**
+     * Initialize Firebase on the calling thread. Prefer ready(), which doesn't block.
+     */
+    public static synchronized void initialize() {
+        initStarted.set(true);
+        startedFuture.complete(null);
+        if (initializationFuture.isDone()) {
+            return; // Already initialized (or failed)
         }
 
+        long start = System.nanoTime();
         try {
             // Load the service account from resources using classloader
             InputStream serviceAccount = FirebaseConfig.class.getClassLoader()
@@ -40,8 +95,10 @@ public class FirebaseConfig {
             FirebaseApp.initializeApp(options);
             firebaseAuth = FirebaseAuth.getInstance();
             isInitialized.set(true);
+            initTimeMs = (System.nanoTime() - start) / 1_000_000;
+            System.out.println("✅ Firebase initialized successfully in " + initTimeMs + " ms.");
+            warmUp();
             initializationFuture.complete(true);
-            System.out.println("✅ Firebase initialized successfully.");
         } catch (Exception e) {
             System.err.println("❌ Failed to initialize Firebase.");
             e.printStackTrace();
@@ -49,6 +106,32 @@ public class FirebaseConfig {
         }
     }
 
+    // Listening to .info/connected makes the SDK connect now and keeps the connection open
+    private static void warmUp() {
+        long start = System.nanoTime();
+        FirebaseDatabase.getInstance().getReference(".info/connected").addValueEventListener(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                boolean wasConnected = connected;
+                connected = Boolean.TRUE.equals(snapshot.getValue(Boolean.class));
+                if (connected && connectTimeMs < 0) {
+                    connectTimeMs = (System.nanoTime() - start) / 1_000_000;
+                    System.out.println("Connected to the database in " + connectTimeMs + " ms.");
+                }
+                if (connected != wasConnected) {
+                    for (Consumer<Boolean> listener : connectionListeners) {
+                        listener.accept(connected);
+                    }
+                }
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                System.err.println("Connection listener cancelled: " + error.getMessage());
+            }
+        });
+    }
+
     public static FirebaseAuth getFirebaseAuth() {
         return firebaseAuth;
     }
@@ -57,7 +140,64 @@ public class FirebaseConfig {
         return isInitialized.get();
     }
 
+    // Same as ready()
     public static CompletableFuture<Boolean> getInitializationFuture() {
-        return initializationFuture;
+        return ready();
+    }
+
+    // How long FirebaseApp took to initialize, -1 if it hasn't
+    public static long getInitTimeMs() {
+        return initTimeMs;
+    }
+
+    // How long the first database connection took after initialization, -1 if not connected yet
+    public static long getConnectTimeMs() {
+        return connectTimeMs;
+    }
+
+    public static boolean isConnected() {
+        return connected;
+    }
+
+    /**
+     * Get told when the database connection drops or comes back.
+     * @param listener called with the new state on the SDK's event thread
+     */
+    public static void addConnectionListener(Consumer<Boolean> listener) {
+        connectionListeners.add(listener);
+    }
+
+    public static void removeConnectionListener(Consumer<Boolean> listener) {
+        connectionListeners.remove(listener);
+    }
+
+    /**
+     * @return the database used for room and leaderboard reads and writes
+     */
+    public static RealtimeBackend getBackend() {
+        RealtimeBackend current = backend;
+        if (current == null) {
+            synchronized (FirebaseConfig.class) {
+                if (backend == null) {
+                    String name = System.getProperty(BACKEND_PROPERTY, "firebase");
+                    if (name.equals("fake")) {
+                        System.out.println("Using the in-process fake realtime database");
+                        backend = new FakeRealtimeDatabase(0, 0);
+                    } else {
+                        backend = new FirebaseRealtimeBackend();
+                    }
+                }
+                current = backend;
+            }
+        }
+        return current;
+    }
+
+    /**
+     * Replace the database used for reads and writes (for load tests and offline runs).
+     * @param realtimeBackend the backend to use from now on
+     */
+    public static void setBackend(RealtimeBackend realtimeBackend) {
+        backend = realtimeBackend;
     }
 }
\ No newline at end of file
@@ -1,33 +1,44 @@
 //util->FirebaseManager
 package util;
 
-import com.google.firebase.database.DataSnapshot;
-import com.google.firebase.database.DatabaseError;
-import com.google.firebase.database.DatabaseReference;
-import com.google.firebase.database.FirebaseDatabase;
-import com.google.firebase.database.ValueEventListener;
+import firebase.FirebaseConfig;
+import firebase.RealtimeBackend;
 import models.User;
 
-public class FirebaseManager {
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicLong;
 
-    public static void uploadUserStats(User user) {
-        try {
-            // Use the totalCompletedTasks counter instead of counting current tasks
-            int completedTasks = user.getTotalCompletedTasks();
+public class FirebaseManager {
 
-            DatabaseReference dbRef = FirebaseDatabase.getInstance()
-                    .getReference("leaderboard")
-                    .child(user.getUsername());  // Use username as unique key
+    // uploadUserStats calls skipped because none of the user's stats had changed
+    private static final AtomicLong cleanUploadsSkipped = new AtomicLong();
 
-            dbRef.child("level").setValueAsync(user.getLevel());
-            dbRef.child("xp").setValueAsync(user.getXp());
-            dbRef.child("completedTasks").setValueAsync(completedTasks);
+    /**
+     * Queue the user's progress counters and their level, xp and completed task count
+     * for the leaderboard, if any of them changed since the last upload (see User.getDirtyStats).
+     * Leaderboard uploads are debounced and batched by LeaderboardUploader.
+     * @param user the user whose stats to upload
+     */
+    public static void uploadUserStats(User user) {
+        uploadUserStats(user, false);
+    }
 
-            System.out.println("✅ Successfully uploaded user stats to Firebase.");
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.out.println("❌ Failed to upload stats.");
+    /**
+     * @param user the user whose stats to upload
+     * @param force upload even if no stats changed on this user object, e.g. right after login
+     */
+    public static void uploadUserStats(User user, boolean force) {
+        if (user.takeDirtyStats() == 0 && !force) {
+            cleanUploadsSkipped.incrementAndGet();
+            return;
         }
+        ProgressSync.record(user);
+        LeaderboardUploader.getInstance().upload(user);
+    }
+
+    public static long getCleanUploadsSkipped() {
+        return cleanUploadsSkipped.get();
     }
 
     /**
@@ -35,48 +46,77 @@ public class FirebaseManager {
      * @param user The user to update with data from Firebase
      */
     public static void downloadUserStats(User user) {
-        try {
-            DatabaseReference dbRef = FirebaseDatabase.getInstance()
-                    .getReference("leaderboard")
-                    .child(user.getUsername());
-
-            dbRef.addListenerForSingleValueEvent(new ValueEventListener() {
-                @Override
-                public void onDataChange(DataSnapshot dataSnapshot) {
-                    if (dataSnapshot.exists()) {
-                        // Get values from Firebase
-                        Long level = dataSnapshot.child("level").getValue(Long.class);
-                        Long xp = dataSnapshot.child("xp").getValue(Long.class);
-                        Long completedTasks = dataSnapshot.child("completedTasks").getValue(Long.class);
+        downloadUserStatsAsync(user);
+    }
 
-                        // Update local user if data exists
-                        if (level != null) {
-                            user.setLevel(level.intValue());
+    /**
+     * Downloads the user's progress counters from Firebase, merges them with this
+     * device's (see ProgressSync) and saves the local user if its stats changed.
+     * Users with no counters on the server yet fall back to their leaderboard stats.
+     * @param user The user to update with data from Firebase
+     * @return future that resolves to true if stats were found and applied
+     */
+    public static CompletableFuture<Boolean> downloadUserStatsAsync(User user) {
+        try {
+            RealtimeBackend backend = FirebaseConfig.getBackend();
+            return backend.read(ProgressSync.PATH + "/" + user.getUsername())
+                    .thenCompose(progress -> progress != null
+                            ? CompletableFuture.completedFuture(merge(user, progress))
+                            : backend.read("leaderboard/" + user.getUsername()).thenApply(stats -> mergeLegacy(user, stats)))
+                    .handle((changed, error) -> {
+                        if (error != null) {
+                            System.out.println("❌ Failed to download stats: " + SyncExecutor.unwrap(error).getMessage());
+                            return false;
                         }
-                        if (xp != null) {
-                            user.setXp(xp.intValue());
+                        if (changed == null) {
+                            System.out.println("ℹ️ No data found in Firebase for user: " + user.getUsername());
+                            return false;
                         }
-                        if (completedTasks != null) {
-                            // Set the total completed tasks counter
-                            user.setTotalCompletedTasks(completedTasks.intValue());
+                        if (changed) {
+                            // Save the merged stats locally
+                            DataManager.saveUser(user);
+                            uploadUserStats(user);
                         }
-
-                        // Save the updated user locally
-                        DataManager.saveUser(user);
-                        System.out.println("✅ Successfully downloaded and updated user stats from Firebase.");
-                    } else {
-                        System.out.println("ℹ️ No data found in Firebase for user: " + user.getUsername());
-                    }
-                }
-
-                @Override
-                public void onCancelled(DatabaseError databaseError) {
-                    System.out.println("❌ Failed to download stats: " + databaseError.getMessage());
-                }
-            });
+                        System.out.println("✅ Successfully merged user stats from Firebase.");
+                        return true;
+                    });
         } catch (Exception e) {
             e.printStackTrace();
             System.out.println("❌ Failed to download stats.");
+            return CompletableFuture.completedFuture(false);
+        }
+    }
+
+    /**
+     * Merge the user's progress with Firebase (see downloadUserStatsAsync), then upload
+     * the merged stats even if nothing changed. For logins.
+     * @param user the local user, saved if the merge changed its stats
+     * @return future that resolves to true if stats were found and applied
+     */
+    public static CompletableFuture<Boolean> syncUserStatsAsync(User user) {
+        return downloadUserStatsAsync(user).thenApply(merged -> {
+            uploadUserStats(user, true);
+            return merged;
+        });
+    }
+
+    private static Boolean merge(User user, Object progress) {
+        return ProgressSync.merge(user, RealtimeBackend.children(progress));
+    }
+
+    // Stats uploaded before progress counters existed
+    private static Boolean mergeLegacy(User user, Object value) {
+        if (value == null) {
+            ProgressSync.record(user); // Nothing on the server yet; make sure this device's progress goes up
+            return null;
         }
+        Map<String, Object> stats = RealtimeBackend.children(value);
+        Long level = RealtimeBackend.asLong(stats.get("level"));
+        Long xp = RealtimeBackend.asLong(stats.get("xp"));
+        Long completedTasks = RealtimeBackend.asLong(stats.get("completedTasks"));
+        return ProgressSync.mergeLegacy(user,
+                level != null ? level : 1,
+                xp != null ? xp : 0,
+                completedTasks != null ? completedTasks : 0);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,123 @@
+//firebase->FirebaseRealtimeBackend
+package firebase;
+
+import com.google.firebase.database.DataSnapshot;
+import com.google.firebase.database.DatabaseError;
+import com.google.firebase.database.DatabaseException;
+import com.google.firebase.database.DatabaseReference;
+import com.google.firebase.database.FirebaseDatabase;
+import com.google.firebase.database.MutableData;
+import com.google.firebase.database.Transaction;
+import com.google.firebase.database.ValueEventListener;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * RealtimeBackend on the real Firebase Realtime Database. Operations wait for
+ * FirebaseConfig.ready() without blocking, and fail if Firebase can't be used.
+ */
+public class FirebaseRealtimeBackend implements RealtimeBackend {
+
+    private static DatabaseReference ref(String path) {
+        DatabaseReference root = FirebaseDatabase.getInstance().getReference();
+        return path.isEmpty() ? root : root.child(path);
+    }
+
+    // Run start once Firebase is ready, or fail result if it isn't available
+    private static <T> CompletableFuture<T> whenReady(CompletableFuture<T> result, Runnable start) {
+        FirebaseConfig.ready().whenComplete((ready, error) -> {
+            if (result.isDone()) return; // Cancelled while waiting
+            if (!Boolean.TRUE.equals(ready)) {
+                result.completeExceptionally(new IllegalStateException("Firebase is not available"));
+                return;
+            }
+            try {
+                start.run();
+            } catch (RuntimeException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    @Override
+    public CompletableFuture<Void> started() {
+        return FirebaseConfig.whenStarted();
+    }
+
+    @Override
+    public CompletableFuture<Object> read(String path) {
+        CompletableFuture<Object> future = new CompletableFuture<>();
+        return whenReady(future, () -> listen(path, future));
+    }
+
+    private static void listen(String path, CompletableFuture<Object> future) {
+        DatabaseReference ref = ref(path);
+        ValueEventListener listener = new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                future.complete(snapshot.getValue());
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                future.completeExceptionally(error.toException());
+            }
+        };
+        // If the caller gives up first, don't leave the listener waiting
+        future.whenComplete((v, e) -> {
+            if (future.isCancelled()) {
+                ref.removeEventListener(listener);
+            }
+        });
+        ref.addListenerForSingleValueEvent(listener);
+    }
+
+    @Override
+    public CompletableFuture<Void> update(Map<String, Object> updates) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        return whenReady(future, () -> {
+            try {
+                ref("").updateChildren(updates, (error, ref) -> {
+                    if (error == null) {
+                        future.complete(null);
+                    } else if (error.getCode() == DatabaseError.PERMISSION_DENIED) {
+                        future.completeExceptionally(new RejectedException(error.getMessage(), error.toException()));
+                    } else {
+                        future.completeExceptionally(error.toException());
+                    }
+                });
+            } catch (DatabaseException e) {
+                // Invalid paths and values are refused before anything is sent
+                future.completeExceptionally(new RejectedException(e.getMessage(), e));
+            }
+        });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> transaction(String path, Function<Object, Object> update) {
+        CompletableFuture<Boolean> future = new CompletableFuture<>();
+        return whenReady(future, () -> ref(path).runTransaction(new Transaction.Handler() {
+            @Override
+            public Transaction.Result doTransaction(MutableData currentData) {
+                Object value = update.apply(currentData.getValue());
+                if (value == ABORT) {
+                    return Transaction.abort();
+                }
+                currentData.setValue(value);
+                return Transaction.success(currentData);
+            }
+
+            @Override
+            public void onComplete(DatabaseError error, boolean committed, DataSnapshot currentData) {
+                if (error != null) {
+                    future.completeExceptionally(error.toException());
+                } else {
+                    future.complete(committed);
+                }
+            }
+        }));
+    }
+}
@@ -3,120 +3,98 @@ package firebase;
 import com.google.firebase.database.*;
 import models.User;
 import ui.MultiplayerStudyScreen;
+import util.SyncExecutor;
 
 import javax.swing.*;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.CountDownLatch;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-
+import java.util.function.Function;
+
+/**
+ * Multiplayer rooms in the Realtime Database (multiplayer_rooms/<roomId>), plus an
+ * index of the rooms each user is in (user_rooms/<username>) so a user's rooms can
+ * be found without reading every room.
+ *
+ * Reads and writes go through FirebaseConfig.getBackend(), so they also run against
+ * FakeRealtimeDatabase; the live room listener uses the Firebase SDK.
+ *
+ * The *Async methods never block: they return a future that completes when
+ * the database answers, fails with a TimeoutException after the per-call timeout,
+ * and stops waiting on Firebase if the caller cancels it. Their callbacks run
+ * on Firebase's event thread, so use SwingUtilities.invokeLater for UI work.
+ * The older blocking methods wait on the async ones (never without a timeout)
+ * and are kept for callers that are already off the Swing thread.
+ */
 public class FirebaseRoomManager {
-    private static final DatabaseReference roomsRef = FirebaseDatabase.getInstance()
-            .getReference("multiplayer_rooms");
+    private static final String ROOMS = "multiplayer_rooms";
+    // Reverse index, user_rooms/<username>/<roomId> = true, kept in step with room membership
+    private static final String USER_ROOMS = "user_rooms";
+
+    // Per-call timeouts, in seconds
+    private static final long CREATE_TIMEOUT = 5;
+    private static final long JOIN_TIMEOUT = 10;
+    private static final long QUERY_TIMEOUT = 5;
+    private static final long EXISTS_TIMEOUT = 3;
+    private static final long DELETE_TIMEOUT = 10;
 
     /**
-     * Create a new room in Firebase
+     * Create a new room in Firebase with its creator already in it.
+     * Runs as one transaction on the room's location, so it takes a single round trip
+     * when the ID is free, and two clients picking the same ID can't both succeed.
      * @param roomId the unique ID for the room
      * @param maxPlayers maximum number of players allowed in the room
      * @param creator the user who created the room
-     * @return true if room creation was successful
+     * @return future that resolves to true if the room was created, false if the ID is taken
      */
-    public static boolean createRoom(String roomId, int maxPlayers, User creator) {
-        try {
-            // Check if room already exists
-            CountDownLatch latch = new CountDownLatch(1);
-            final boolean[] roomExists = {false};
-
-            roomsRef.child(roomId).addListenerForSingleValueEvent(new ValueEventListener() {
-                @Override
-                public void onDataChange(DataSnapshot snapshot) {
-                    roomExists[0] = snapshot.exists();
-                    latch.countDown();
-                }
-
-                @Override
-                public void onCancelled(DatabaseError error) {
-                    latch.countDown();
-                }
-            });
-
-            // Wait for the check to complete with a timeout
-            if (!latch.await(5, TimeUnit.SECONDS)) {
-                System.err.println("Timeout checking if room exists");
-                return false;
-            }
-
-            if (roomExists[0]) {
-                System.out.println("Room " + roomId + " already exists, cannot create");
-                return false; // Room already exists
-            }
-
-            // Create room data
-            Map<String, Object> roomData = new HashMap<>();
-            roomData.put("maxPlayers", maxPlayers);
-            roomData.put("createdAt", ServerValue.TIMESTAMP);
-            roomData.put("creator", creator.getUsername());
-
-            // First, create the room itself
-            CountDownLatch roomCreationLatch = new CountDownLatch(1);
-            final boolean[] roomCreationSuccessful = {false};
-
-            roomsRef.child(roomId).setValue(roomData, (error, ref) -> {
-                if (error != null) {
-                    System.err.println("Error creating room: " + error.getMessage());
-                    roomCreationSuccessful[0] = false;
-                } else {
-                    System.out.println("Successfully created room base data: " + roomId);
-                    roomCreationSuccessful[0] = true;
-                }
-                roomCreationLatch.countDown();
-            });
-
-            // Wait for room creation to complete
-            if (!roomCreationLatch.await(5, TimeUnit.SECONDS)) {
-                System.err.println("Timeout creating room");
-                return false;
-            }
-
-            if (!roomCreationSuccessful[0]) {
-                return false;
-            }
-
-            // Now add the user to the room
-            Map<String, Object> userData = new HashMap<>();
-            userData.put("username", creator.getUsername());
-            userData.put("level", creator.getLevel());
-            userData.put("joinedAt", ServerValue.TIMESTAMP);
-
-            // Save user data to Firebase with a completion listener
-            CountDownLatch userAddLatch = new CountDownLatch(1);
-            final boolean[] userAddSuccessful = {false};
-
-            roomsRef.child(roomId).child("users").child(creator.getUsername()).setValue(userData, (error, ref) -> {
-                if (error != null) {
-                    System.err.println("Error adding user to room: " + error.getMessage());
-                    userAddSuccessful[0] = false;
-                } else {
-                    System.out.println("Successfully added user to room: " + roomId);
-                    userAddSuccessful[0] = true;
-                }
-                userAddLatch.countDown();
-            });
+    public static CompletableFuture<Boolean> createRoomAsync(String roomId, int maxPlayers, User creator) {
+        return call(CREATE_TIMEOUT, owner -> backend().transaction(roomPath(roomId), current -> {
+                    if (current != null) {
+                        return RealtimeBackend.ABORT; // Someone else already has this ID
+                    }
 
-            // Wait for user addition to complete
-            if (!userAddLatch.await(5, TimeUnit.SECONDS)) {
-                System.err.println("Timeout adding user to room");
-                return false;
-            }
+                    // Room data and the creator's membership in one value
+                    Map<String, Object> users = new HashMap<>();
+                    users.put(creator.getUsername(), memberData(creator));
+
+                    Map<String, Object> roomData = new HashMap<>();
+                    roomData.put("maxPlayers", maxPlayers);
+                    roomData.put("createdAt", ServerValue.TIMESTAMP);
+                    roomData.put("creator", creator.getUsername());
+                    roomData.put("users", users);
+                    return roomData;
+                })
+                .thenApply(committed -> {
+                    if (committed) {
+                        System.out.println("Successfully created room " + roomId + " with " + creator.getUsername());
+                        // A transaction covers one location, so the index entry is a separate write; don't wait for it
+                        update(membership(roomId, creator.getUsername(), true), owner).exceptionally(e -> {
+                            System.err.println("Error indexing room " + roomId + ": " + e.getMessage());
+                            return null;
+                        });
+                    } else {
+                        System.out.println("Room " + roomId + " already exists, cannot create");
+                    }
+                    return committed;
+                }));
+    }
 
-            return userAddSuccessful[0];
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
-        }
+    /**
+     * Create a new room in Firebase, waiting for the result
+     * @param roomId the unique ID for the room
+     * @param maxPlayers maximum number of players allowed in the room
+     * @param creator the user who created the room
+     * @return true if room creation was successful
+     */
+    public static boolean createRoom(String roomId, int maxPlayers, User creator) {
+        return await(createRoomAsync(roomId, maxPlayers, creator), false, "creating room");
     }
 
     /**
@@ -124,105 +102,36 @@ public class FirebaseRoomManager {
      * @param roomId the ID of the room to join
      * @param user the user joining the room
      * @param forceJoin whether to join even if the room is in use
-     * @return a result code: 0=success, 1=room doesn't exist, 2=room is full, 3=room in use by others
+     * @return future with a result code: 0=success, 1=room doesn't exist, 2=room is full, 3=room in use by others
      */
-    public static int joinRoom(String roomId, User user, boolean forceJoin) {
-        try {
-            // Check if room exists and has space
-            CountDownLatch latch = new CountDownLatch(1);
-            final int[] joinResult = {0}; // 0=success, 1=room doesn't exist, 2=room is full, 3=room in use by others
-            final boolean[] roomHasOtherUsers = {false};
-
-            roomsRef.child(roomId).addListenerForSingleValueEvent(new ValueEventListener() {
-                @Override
-                public void onDataChange(DataSnapshot snapshot) {
-                    if (!snapshot.exists()) {
-                        joinResult[0] = 1; // Room doesn't exist
-                        latch.countDown();
-                        return;
+    public static CompletableFuture<Integer> joinRoomAsync(String roomId, User user, boolean forceJoin) {
+        return call(JOIN_TIMEOUT, owner -> read(roomPath(roomId), owner)
+                .thenCompose(room -> {
+                    int check = checkJoin(roomId, room, user, forceJoin);
+                    if (check != 0 || members(room).containsKey(user.getUsername())) {
+                        return CompletableFuture.completedFuture(check);
                     }
 
-                    // Check if user is already in room
-                    if (snapshot.child("users").child(user.getUsername()).exists()) {
-                        joinResult[0] = 0; // Success - already in room
-                        latch.countDown();
-                        return;
-                    }
-
-                    // Check if room is full
-                    long maxPlayers = snapshot.child("maxPlayers").getValue(Long.class);
-                    long currentPlayers = snapshot.child("users").getChildrenCount();
-
-                    if (currentPlayers >= maxPlayers) {
-                        joinResult[0] = 2; // Room is full
-                        latch.countDown();
-                        return;
-                    }
-
-                    // Check if room is being used by others (and we're not forcing join)
-                    if (!forceJoin && currentPlayers > 0) {
-                        roomHasOtherUsers[0] = true;
-
-                        // Get the names of users in the room for better error message
-                        List<String> userNames = new ArrayList<>();
-                        for (DataSnapshot userSnapshot : snapshot.child("users").getChildren()) {
-                            String username = userSnapshot.child("username").getValue(String.class);
-                            if (username != null) {
-                                userNames.add(username);
-                            }
-                        }
-
-                        if (!userNames.isEmpty()) {
-                            System.out.println("Room " + roomId + " is in use by: " + String.join(", ", userNames));
-                            joinResult[0] = 3; // Room in use by others
-                            latch.countDown();
-                            return;
-                        }
-                    }
-
-                    joinResult[0] = 0; // Success - can join
-                    latch.countDown();
-                }
-
-                @Override
-                public void onCancelled(DatabaseError error) {
-                    joinResult[0] = -1; // Error
-                    latch.countDown();
-                }
-            });
-
-            latch.await();
-
-            if (joinResult[0] != 0) {
-                return joinResult[0];
-            }
-
-            // Add user to room
-            Map<String, Object> userData = new HashMap<>();
-            userData.put("username", user.getUsername());
-            userData.put("level", user.getLevel());
-            userData.put("joinedAt", ServerValue.TIMESTAMP);
-
-            CountDownLatch joinLatch = new CountDownLatch(1);
-            final boolean[] joinSuccessful = {false};
-
-            roomsRef.child(roomId).child("users").child(user.getUsername()).setValue(userData, (error, ref) -> {
-                if (error != null) {
-                    System.err.println("Error joining room: " + error.getMessage());
-                    joinSuccessful[0] = false;
-                } else {
-                    System.out.println("Successfully joined room: " + roomId);
-                    joinSuccessful[0] = true;
-                }
-                joinLatch.countDown();
-            });
+                    // Add user to room and to the user's room index together
+                    Map<String, Object> updates = membership(roomId, user.getUsername(), true);
+                    updates.put(roomPath(roomId) + "/users/" + user.getUsername(), memberData(user));
+                    return update(updates, owner)
+                            .thenApply(v -> {
+                                System.out.println("Successfully joined room: " + roomId);
+                                return 0;
+                            });
+                }));
+    }
 
-            joinLatch.await(5, TimeUnit.SECONDS);
-            return joinSuccessful[0] ? 0 : -1;
-        } catch (Exception e) {
-            e.printStackTrace();
-            return -1;
-        }
+    /**
+     * Join an existing room, waiting for the result
+     * @param roomId the ID of the room to join
+     * @param user the user joining the room
+     * @param forceJoin whether to join even if the room is in use
+     * @return a result code: 0=success, 1=room doesn't exist, 2=room is full, 3=room in use by others, -1=error
+     */
+    public static int joinRoom(String roomId, User user, boolean forceJoin) {
+        return await(joinRoomAsync(roomId, user, forceJoin), -1, "joining room");
     }
 
     /**
@@ -236,283 +145,493 @@ public class FirebaseRoomManager {
         return result == 0;
     }
 
+    // 0 if the user may join (or is already in the room), otherwise the joinRoom error code
+    private static int checkJoin(String roomId, Object room, User user, boolean forceJoin) {
+        if (room == null) {
+            return 1; // Room doesn't exist
+        }
+
+        // Check if user is already in room
+        Map<String, Object> members = members(room);
+        if (members.containsKey(user.getUsername())) {
+            return 0; // Success - already in room
+        }
+
+        // Check if room is full
+        Long maxPlayers = RealtimeBackend.asLong(RealtimeBackend.children(room).get("maxPlayers"));
+        long currentPlayers = members.size();
+        if (maxPlayers != null && currentPlayers >= maxPlayers) {
+            return 2; // Room is full
+        }
+
+        // Check if room is being used by others (and we're not forcing join)
+        if (!forceJoin && currentPlayers > 0) {
+            // Get the names of users in the room for better error message
+            List<String> userNames = usernames(members);
+            if (!userNames.isEmpty()) {
+                System.out.println("Room " + roomId + " is in use by: " + String.join(", ", userNames));
+                return 3; // Room in use by others
+            }
+        }
+        return 0; // Success - can join
+    }
+
     /**
      * Leave a room
      * @param roomId the ID of the room to leave
      * @param username the username of the user leaving
+     * @return future that completes when Firebase has removed the user
+     */
+    public static CompletableFuture<Void> leaveRoomAsync(String roomId, String username) {
+        return call(QUERY_TIMEOUT, owner -> update(membership(roomId, username, false), owner));
+    }
+
+    /**
+     * Leave a room without waiting. Sent directly rather than through SyncOutbox:
+     * a queued leave could be replayed after the user has joined the room again.
+     * If the app is offline or closes first, RoomPresence's onDisconnect removes
+     * the user instead.
+     * @param roomId the ID of the room to leave
+     * @param username the username of the user leaving
      */
     public static void leaveRoom(String roomId, String username) {
-        roomsRef.child(roomId).child("users").child(username).removeValue((error, ref) -> {
-            if (error != null) {
-                System.err.println("Error leaving room: " + error.getMessage());
-            }
+        leaveRoomAsync(roomId, username).exceptionally(e -> {
+            System.err.println("Could not leave room " + roomId + ": " + SyncExecutor.unwrap(e).getMessage());
+            return null;
         });
     }
 
     /**
-     * Set up a listener for room changes
+     * Listeners attached by listenForRoomChanges; pass back to removeRoomListener.
+     */
+    public static final class RoomSubscription {
+        private final ChildEventListener usersListener;
+        private final ValueEventListener closedListener;
+        private final RoomPresence presence;
+        // The listeners are attached once Firebase is ready; removal may come first
+        private boolean attached = false;
+        private boolean removed = false;
+
+        private RoomSubscription(ChildEventListener usersListener, ValueEventListener closedListener, RoomPresence presence) {
+            this.usersListener = usersListener;
+            this.closedListener = closedListener;
+            this.presence = presence;
+        }
+
+        private synchronized void attach(String roomId) {
+            if (removed) return;
+            RoomSnapshotCache.open(roomId);
+            DatabaseReference users = roomsRef().child(roomId).child("users");
+            users.addChildEventListener(usersListener);
+            roomsRef().child(roomId).child("creator").addValueEventListener(closedListener);
+            // Value events come after the initial child events, so after this the cache has every member
+            users.addListenerForSingleValueEvent(new ValueEventListener() {
+                @Override
+                public void onDataChange(DataSnapshot snapshot) {
+                    RoomSnapshotCache.membersLoaded(roomId, RealtimeBackend.children(snapshot.getValue()));
+                }
+
+                @Override
+                public void onCancelled(DatabaseError error) {
+                    RoomSnapshotCache.invalidate(roomId);
+                }
+            });
+            attached = true;
+        }
+
+        private synchronized void detach(String roomId) {
+            removed = true;
+            if (!attached) return;
+            roomsRef().child(roomId).child("users").removeEventListener(usersListener);
+            roomsRef().child(roomId).child("creator").removeEventListener(closedListener);
+            RoomSnapshotCache.close(roomId);
+        }
+
+        public RoomPresence getPresence() {
+            return presence;
+        }
+    }
+
+    /**
+     * Set up a listener for room changes. Membership changes arrive one user at a time
+     * (joined, updated, left) instead of the whole room on every change; existing members
+     * are delivered as joins when the listener is attached. All calls to the screen are
+     * made on the Swing thread.
+     * The same events drive this client's RoomPresence (heartbeat and removal of silent members)
+     * and keep RoomSnapshotCache current, so reads of this room don't go to the database.
      * @param roomId the ID of the room to listen to
+     * @param username the user on this client
      * @param screen the MultiplayerStudyScreen to update when users join/leave
-     * @return the ValueEventListener that was created (store to remove later)
+     * @return the listeners that were attached (store to remove later)
      */
-    public static ValueEventListener listenForRoomChanges(String roomId, MultiplayerStudyScreen screen) {
-        ValueEventListener roomListener = new ValueEventListener() {
+    public static RoomSubscription listenForRoomChanges(String roomId, String username, MultiplayerStudyScreen screen) {
+        RoomPresence presence = new RoomPresence(roomId, username);
+        ChildEventListener usersListener = new ChildEventListener() {
+            @Override
+            public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+                String member = snapshot.getKey();
+                RoomSnapshotCache.memberChanged(roomId, member, snapshot.getValue());
+                presence.heard(member);
+                SwingUtilities.invokeLater(() -> screen.roomUserJoined(member));
+            }
+
+            @Override
+            public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+                String member = snapshot.getKey();
+                RoomSnapshotCache.memberChanged(roomId, member, snapshot.getValue());
+                presence.heard(member);
+                Integer level = snapshot.child("level").getValue(Integer.class);
+                SwingUtilities.invokeLater(() -> screen.roomUserUpdated(member, level != null ? level : 0));
+            }
+
+            @Override
+            public void onChildRemoved(DataSnapshot snapshot) {
+                String member = snapshot.getKey();
+                RoomSnapshotCache.memberRemoved(roomId, member);
+                presence.forget(member);
+                SwingUtilities.invokeLater(() -> screen.roomUserLeft(member));
+            }
+
+            @Override
+            public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+                // Order doesn't matter for membership
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                RoomSnapshotCache.invalidate(roomId);
+                System.err.println("Room listener cancelled: " + error.getMessage());
+            }
+        };
+
+        // Every room has a creator, so watching that one value tells us when the room is deleted
+        ValueEventListener closedListener = new ValueEventListener() {
             @Override
             public void onDataChange(DataSnapshot snapshot) {
+                RoomSnapshotCache.existsChanged(roomId, snapshot.exists());
                 if (!snapshot.exists()) {
                     SwingUtilities.invokeLater(() -> {
                         JOptionPane.showMessageDialog(screen,
                                 "This room no longer exists!",
                                 "Room Closed",
                                 JOptionPane.WARNING_MESSAGE);
-                        screen.dispose();
+                        screen.roomClosed();
                     });
-                    return;
-                }
-
-                // Get list of users in the room
-                List<String> usernames = new ArrayList<>();
-                for (DataSnapshot userSnapshot : snapshot.child("users").getChildren()) {
-                    usernames.add(userSnapshot.child("username").getValue(String.class));
                 }
-
-                // Update room info in the UI
-                SwingUtilities.invokeLater(() -> {
-                    screen.updateRoomInfo(usernames.size());
-
-                    // Automatically refresh participants whenever room changes
-                    screen.refreshRoomParticipants();
-                });
             }
 
             @Override
             public void onCancelled(DatabaseError error) {
+                RoomSnapshotCache.invalidate(roomId);
                 System.err.println("Room listener cancelled: " + error.getMessage());
             }
         };
 
-        roomsRef.child(roomId).addValueEventListener(roomListener);
-        return roomListener;
+        RoomSubscription subscription = new RoomSubscription(usersListener, closedListener, presence);
+        FirebaseConfig.ready().thenAccept(ready -> {
+            if (ready) {
+                subscription.attach(roomId);
+            } else {
+                System.err.println("Firebase is not available, room " + roomId + " won't update live");
+            }
+        });
+        return subscription;
     }
 
     /**
      * Remove room listener
      * @param roomId the ID of the room
-     * @param listener the ValueEventListener to remove
+     * @param subscription the listeners returned by listenForRoomChanges
      */
-    public static void removeRoomListener(String roomId, ValueEventListener listener) {
-        if (listener != null) {
-            roomsRef.child(roomId).removeEventListener(listener);
+    public static void removeRoomListener(String roomId, RoomSubscription subscription) {
+        if (subscription != null) {
+            subscription.presence.stop();
+            subscription.detach(roomId);
         }
     }
 
+    // Have Firebase remove our membership and index entry if this client disconnects
+    static void removeOnDisconnect(String roomId, String username) {
+        DatabaseReference.CompletionListener logErrors = (error, ref) -> {
+            if (error != null) {
+                System.err.println("Error registering disconnect cleanup: " + error.getMessage());
+            }
+        };
+        roomsRef().child(roomId).child("users").child(username).onDisconnect().removeValue(logErrors);
+        userRoomsRef().child(username).child(roomId).onDisconnect().removeValue(logErrors);
+    }
+
+    static void cancelOnDisconnect(String roomId, String username) {
+        if (!FirebaseConfig.isInitialized()) return; // Nothing can have been registered
+        DatabaseReference.CompletionListener logErrors = (error, ref) -> {
+            if (error != null) {
+                System.err.println("Error cancelling disconnect cleanup: " + error.getMessage());
+            }
+        };
+        roomsRef().child(roomId).child("users").child(username).onDisconnect().cancel(logErrors);
+        userRoomsRef().child(username).child(roomId).onDisconnect().cancel(logErrors);
+    }
+
     /**
-     * Get users currently in a room
-     * @param roomId the ID of the room
-     * @return list of usernames in the room
+     * Touch our member entry so the other clients know we're still here. Runs as a
+     * transaction that aborts if the entry is gone, so a heartbeat never brings back a
+     * member another client's sweep just removed. The room listener keeps the entry
+     * cached locally, so the first attempt already sees the real value.
+     * @return future that resolves to false if we are no longer a member
      */
-    public static List<String> getUsersInRoom(String roomId) {
-        List<String> users = new ArrayList<>();
-        try {
-            CountDownLatch latch = new CountDownLatch(1);
-
-            roomsRef.child(roomId).child("users").addListenerForSingleValueEvent(new ValueEventListener() {
-                @Override
-                public void onDataChange(DataSnapshot snapshot) {
-                    for (DataSnapshot userSnapshot : snapshot.getChildren()) {
-                        String username = userSnapshot.child("username").getValue(String.class);
-                        if (username != null) {
-                            users.add(username);
-                        }
+    static CompletableFuture<Boolean> heartbeat(String roomId, String username) {
+        return backend().transaction(roomPath(roomId) + "/users/" + username, current -> {
+                    if (!(current instanceof Map)) {
+                        return RealtimeBackend.ABORT;
                     }
-                    latch.countDown();
-                }
+                    Map<String, Object> member = new HashMap<>(RealtimeBackend.children(current));
+                    member.put("lastSeen", ServerValue.TIMESTAMP);
+                    return member;
+                })
+                .exceptionally(e -> {
+                    System.err.println("Room heartbeat failed: " + e.getMessage());
+                    return true; // Still a member as far as we know; try again next beat
+                });
+    }
 
-                @Override
-                public void onCancelled(DatabaseError error) {
-                    latch.countDown();
-                }
-            });
+    /**
+     * Remove several members (and their index entries) from a room in one update
+     * @param roomId the ID of the room
+     * @param usernames the members to remove
+     * @return future that completes when Firebase has removed them
+     */
+    static CompletableFuture<Void> removeMembersAsync(String roomId, Collection<String> usernames) {
+        return call(QUERY_TIMEOUT, owner -> {
+            Map<String, Object> updates = new HashMap<>();
+            for (String username : usernames) {
+                updates.putAll(membership(roomId, username, false));
+            }
+            return update(updates, owner);
+        });
+    }
 
-            latch.await();
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Get users currently in a room
+     * @param roomId the ID of the room
+     * @return future with the usernames in the room
+     */
+    public static CompletableFuture<List<String>> getUsersInRoomAsync(String roomId) {
+        Map<String, Object> cached = RoomSnapshotCache.members(roomId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(usernames(cached));
         }
+        return call(QUERY_TIMEOUT, owner -> read(roomPath(roomId) + "/users", owner)
+                .thenApply(users -> usernames(RealtimeBackend.children(users))));
+    }
 
-        return users;
+    /**
+     * Get users currently in a room, waiting for the result
+     * @param roomId the ID of the room
+     * @return list of usernames in the room, empty on error or timeout
+     */
+    public static List<String> getUsersInRoom(String roomId) {
+        return await(getUsersInRoomAsync(roomId), new ArrayList<>(), "getting users in room");
     }
 
     /**
-     * Delete all rooms where the specified user is the creator
+     * Delete all rooms the specified user is in.
      * This is used when a user logs in to clean up previous sessions
      *
      * @param username the username of the user
-     * @return true if deletion completed successfully
+     * @return future that resolves to true if every matching room was deleted
      */
-    public static boolean deleteUserRooms(String username) {
-        try {
-            CountDownLatch latch = new CountDownLatch(1);
-            final boolean[] deletionSuccessful = {true};
-
-            roomsRef.addListenerForSingleValueEvent(new ValueEventListener() {
-                @Override
-                public void onDataChange(DataSnapshot snapshot) {
-                    if (!snapshot.exists() || !snapshot.hasChildren()) {
+    public static CompletableFuture<Boolean> deleteUserRoomsAsync(String username) {
+        // Only this user's index is read, so the cost doesn't grow with the number of rooms
+        return call(DELETE_TIMEOUT, owner -> read(USER_ROOMS + "/" + username, owner)
+                .thenCompose(index -> {
+                    Set<String> roomIds = RealtimeBackend.children(index).keySet();
+                    if (roomIds.isEmpty()) {
                         System.out.println("No rooms found to delete for user: " + username);
-                        latch.countDown();
-                        return;
-                    }
-
-                    final CountDownLatch deletionLatch = new CountDownLatch(1);
-                    final AtomicInteger pendingDeletions = new AtomicInteger(0);
-
-                    // List to store rooms to be deleted
-                    List<String> roomsToDelete = new ArrayList<>();
-
-                    for (DataSnapshot roomSnapshot : snapshot.getChildren()) {
-                        // Check if user is in this room
-                        if (roomSnapshot.child("users").child(username).exists()) {
-                            roomsToDelete.add(roomSnapshot.getKey());
-                        }
-                    }
-
-                    // If no rooms needed deletion
-                    if (roomsToDelete.isEmpty()) {
-                        deletionLatch.countDown();
-                    } else {
-                        pendingDeletions.set(roomsToDelete.size());
-
-                        // Process each room deletion separately to avoid path conflicts
-                        for (String roomId : roomsToDelete) {
-                            roomsRef.child(roomId).removeValue((error, ref) -> {
-                                if (error != null) {
-                                    System.err.println("Error deleting room: " + error.getMessage());
-                                    deletionSuccessful[0] = false;
-                                } else {
-                                    System.out.println("Successfully deleted room: " + roomId + " for user: " + username);
-                                }
-
-                                if (pendingDeletions.decrementAndGet() == 0) {
-                                    deletionLatch.countDown();
-                                }
-                            });
-                        }
+                        return CompletableFuture.completedFuture(true);
                     }
 
-                    // Wait for all deletions to complete
-                    try {
-                        deletionLatch.await(5, TimeUnit.SECONDS);
-                    } catch (InterruptedException e) {
-                        System.err.println("Deletion wait interrupted: " + e.getMessage());
-                        deletionSuccessful[0] = false;
+                    // Delete every room and its index entry in one multi-path update.
+                    // Other members' index entries for these rooms are cleared on their own next cleanup.
+                    Map<String, Object> updates = new HashMap<>();
+                    for (String roomId : roomIds) {
+                        // Not membership(): a path and its parent can't be in the same update
+                        updates.put(USER_ROOMS + "/" + username + "/" + roomId, null);
+                        updates.put(roomPath(roomId), null);
                     }
+                    return update(updates, owner).thenApply(v -> {
+                        System.out.println("Successfully deleted " + roomIds.size() + " room(s) for user: " + username);
+                        return true;
+                    });
+                }));
+    }
 
-                    latch.countDown();
-                }
+    /**
+     * Delete all rooms the specified user is in, waiting for the result
+     * @param username the username of the user
+     * @return true if deletion completed successfully
+     */
+    public static boolean deleteUserRooms(String username) {
+        return await(deleteUserRoomsAsync(username), false, "deleting user rooms");
+    }
 
-                @Override
-                public void onCancelled(DatabaseError error) {
-                    System.err.println("Error cleaning up rooms: " + error.getMessage());
-                    deletionSuccessful[0] = false;
-                    latch.countDown();
-                }
-            });
+    /**
+     * Check if a room is currently in use and by whom
+     * @param roomId the ID of the room to check
+     * @return future with "username (Level n)" for each user in the room
+     */
+    public static CompletableFuture<List<String>> getUsersInRoomDetailedAsync(String roomId) {
+        Map<String, Object> cached = RoomSnapshotCache.members(roomId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(detailed(cached));
+        }
+        return call(QUERY_TIMEOUT, owner -> read(roomPath(roomId) + "/users", owner)
+                .thenApply(members -> detailed(RealtimeBackend.children(members))));
+    }
 
-            // Wait for the query to complete with timeout
-            if (!latch.await(10, TimeUnit.SECONDS)) {
-                System.err.println("Timeout waiting for room deletion to complete");
-                return false;
+    private static List<String> detailed(Map<String, Object> members) {
+        List<String> users = new ArrayList<>();
+        for (Object member : members.values()) {
+            Object username = RealtimeBackend.children(member).get("username");
+            Long level = RealtimeBackend.asLong(RealtimeBackend.children(member).get("level"));
+            if (username instanceof String) {
+                users.add(username + " (Level " + (level != null ? level : 0) + ")");
             }
-
-            // Add a small delay to ensure Firebase has time to process deletions
-            Thread.sleep(500);
-
-            return deletionSuccessful[0];
-        } catch (Exception e) {
-            e.printStackTrace();
-            return false;
         }
+        return users;
     }
 
     /**
-     * Check if a room is currently in use and by whom
+     * Check if a room is currently in use and by whom, waiting for the result
      * @param roomId the ID of the room to check
      * @return A list of usernames currently in the room, empty if none
      */
     public static List<String> getUsersInRoomDetailed(String roomId) {
-        List<String> users = new ArrayList<>();
-        try {
-            CountDownLatch latch = new CountDownLatch(1);
-
-            roomsRef.child(roomId).child("users").addListenerForSingleValueEvent(new ValueEventListener() {
-                @Override
-                public void onDataChange(DataSnapshot snapshot) {
-                    if (snapshot.exists() && snapshot.hasChildren()) {
-                        for (DataSnapshot userSnapshot : snapshot.getChildren()) {
-                            String username = userSnapshot.child("username").getValue(String.class);
-                            Long joinedAt = userSnapshot.child("joinedAt").getValue(Long.class);
-                            int level = 0;
-                            if (userSnapshot.child("level").exists()) {
-                                level = userSnapshot.child("level").getValue(Integer.class);
-                            }
-
-                            if (username != null) {
-                                users.add(username + " (Level " + level + ")");
-                            }
-                        }
-                    }
-                    latch.countDown();
-                }
-
-                @Override
-                public void onCancelled(DatabaseError error) {
-                    latch.countDown();
-                }
-            });
+        return await(getUsersInRoomDetailedAsync(roomId), new ArrayList<>(), "getting users in room");
+    }
 
-            latch.await(5, TimeUnit.SECONDS);
-        } catch (Exception e) {
-            e.printStackTrace();
+    /**
+     * Check if a room with the given ID already exists
+     * @param roomId the ID of the room to check
+     * @return future that resolves to true if the room exists
+     */
+    public static CompletableFuture<Boolean> roomExistsAsync(String roomId) {
+        Boolean cached = RoomSnapshotCache.exists(roomId);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
         }
-
-        return users;
+        return call(EXISTS_TIMEOUT, owner -> read(roomPath(roomId), owner)
+                .thenApply(room -> room != null));
     }
 
     /**
-     * Check if a room with the given ID already exists
+     * Check if a room with the given ID already exists, waiting for the result
      * @param roomId the ID of the room to check
      * @return true if the room exists, false otherwise
      */
     public static boolean roomExists(String roomId) {
-        try {
-            CountDownLatch latch = new CountDownLatch(1);
-            final boolean[] exists = {false};
+        return await(roomExistsAsync(roomId), false, "checking if room exists");
+    }
 
-            roomsRef.child(roomId).addListenerForSingleValueEvent(new ValueEventListener() {
-                @Override
-                public void onDataChange(DataSnapshot snapshot) {
-                    exists[0] = snapshot.exists();
-                    latch.countDown();
-                }
+    private static Map<String, Object> memberData(User user) {
+        Map<String, Object> userData = new HashMap<>();
+        userData.put("username", user.getUsername());
+        userData.put("level", user.getLevel());
+        userData.put("joinedAt", ServerValue.TIMESTAMP);
+        return userData;
+    }
 
-                @Override
-                public void onCancelled(DatabaseError error) {
-                    System.err.println("Error checking if room exists: " + error.getMessage());
-                    latch.countDown();
+    /**
+     * Root-relative paths that add a user's index entry for a room,
+     * or remove both the entry and the user's membership.
+     */
+    private static Map<String, Object> membership(String roomId, String username, boolean joined) {
+        Map<String, Object> updates = new HashMap<>();
+        updates.put(USER_ROOMS + "/" + username + "/" + roomId, joined ? true : null);
+        if (!joined) {
+            updates.put(roomPath(roomId) + "/users/" + username, null);
+        }
+        return updates;
+    }
+
+    private static String roomPath(String roomId) {
+        return ROOMS + "/" + roomId;
+    }
+
+    private static Map<String, Object> members(Object room) {
+        return RealtimeBackend.children(RealtimeBackend.children(room).get("users"));
+    }
+
+    private static List<String> usernames(Map<String, Object> members) {
+        List<String> usernames = new ArrayList<>();
+        for (Object member : members.values()) {
+            Object username = RealtimeBackend.children(member).get("username");
+            if (username instanceof String) {
+                usernames.add((String) username);
+            }
+        }
+        return usernames;
+    }
+
+    private static RealtimeBackend backend() {
+        return FirebaseConfig.getBackend();
+    }
+
+    // For the live listeners and onDisconnect, which need the Firebase SDK
+    private static DatabaseReference roomsRef() {
+        return FirebaseDatabase.getInstance().getReference(ROOMS);
+    }
+
+    private static DatabaseReference userRoomsRef() {
+        return FirebaseDatabase.getInstance().getReference(USER_ROOMS);
+    }
+
+    /**
+     * Run one room operation with a timeout. The pipeline gets the returned future
+     * as its owner: once the owner is done (answered, timed out or cancelled),
+     * any Firebase read still in flight is abandoned.
+     */
+    private static <T> CompletableFuture<T> call(long timeoutSeconds,
+                                                 Function<CompletableFuture<?>, CompletableFuture<T>> pipeline) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.orTimeout(timeoutSeconds, TimeUnit.SECONDS);
+        try {
+            pipeline.apply(result).whenComplete((value, error) -> {
+                if (error != null) {
+                    result.completeExceptionally(SyncExecutor.unwrap(error));
+                } else {
+                    result.complete(value);
                 }
             });
+        } catch (RuntimeException e) {
+            result.completeExceptionally(e);
+        }
+        return result;
+    }
 
-            // Wait for the check to complete with a timeout
-            if (!latch.await(3, TimeUnit.SECONDS)) {
-                System.err.println("Timeout checking if room exists");
-                return false;
-            }
+    // Single read of a location, abandoned if the owner finishes first
+    private static CompletableFuture<Object> read(String path, CompletableFuture<?> owner) {
+        CompletableFuture<Object> future = backend().read(path);
+        owner.whenComplete((v, e) -> future.cancel(false));
+        return future;
+    }
 
-            return exists[0];
-        } catch (Exception e) {
-            System.err.println("Error checking if room exists: " + e.getMessage());
-            e.printStackTrace();
-            return false;
+    // Multi-path update of root-relative paths; skipped if the owner is already done
+    private static CompletableFuture<Void> update(Map<String, Object> updates, CompletableFuture<?> owner) {
+        if (owner.isDone()) {
+            CompletableFuture<Void> skipped = new CompletableFuture<>();
+            skipped.cancel(false);
+            return skipped;
+        }
+        return backend().update(updates);
+    }
+
+    // Wait for an async call (which always has its own timeout), or return the fallback if it fails
+    private static <T> T await(CompletableFuture<T> future, T fallback, String action) {
+        try {
+            return future.join();
+        } catch (CompletionException | CancellationException e) {
+            System.err.println("Error " + action + ": " + SyncExecutor.unwrap(e));
+            return fallback;
         }
     }
-}
\ No newline at end of file
+}
@@ -1,21 +1,33 @@
 package ui;
 
 import com.google.firebase.database.*;
+import firebase.FirebaseConfig;
 import util.ColorPalette;
 import util.FontManager;
 
 import javax.swing.*;
 import javax.swing.border.Border;
 import javax.swing.table.DefaultTableCellRenderer;
-import javax.swing.table.DefaultTableModel;
 import javax.swing.table.JTableHeader;
 import java.awt.*;
 import java.util.ArrayList;
 import java.util.List;
 
 public class GlobalLeaderboardScreen extends JFrame {
+    private static final int PAGE_SIZE = 50;
+
     private final FontManager fontManager = FontManager.getInstance();
 
+    // Live top PAGE_SIZE players plus one-shot pages below them; only touched on the Swing thread
+    private final LeaderboardTableModel tableModel = new LeaderboardTableModel();
+    private Query windowQuery;
+    private ChildEventListener windowListener;
+    private Double lastScore = null; // Score and key of the lowest row read, where the next page ends
+    private String lastKey = null;
+    private int pagesLoaded = 0;
+    private boolean loading = false;
+    private boolean allLoaded = false;
+
     public GlobalLeaderboardScreen() {
         setTitle("Global Leaderboard");
         setSize(750, 500);
@@ -59,15 +71,6 @@ public class GlobalLeaderboardScreen extends JFrame {
         panel.setBackground(ColorPalette.SL_BACKGROUND);
         panel.setBorder(BorderFactory.createEmptyBorder(20, 20, 20, 20));
 
-        // Create table model
-        String[] columns = {"RANK", "USERNAME", "LEVEL", "XP", "TASKS"};
-        DefaultTableModel tableModel = new DefaultTableModel(columns, 0) {
-            @Override
-            public boolean isCellEditable(int row, int column) {
-                return false; // Make table read-only
-            }
-        };
-
         // Create table with Solo Leveling style
         JTable leaderboardTable = new JTable(tableModel);
         leaderboardTable.setFont(fontManager.getBodyFont());
@@ -142,8 +145,16 @@ public class GlobalLeaderboardScreen extends JFrame {
 
         panel.add(scrollPane, BorderLayout.CENTER);
 
+        // Show more players when the user scrolls near the bottom
+        scrollPane.getVerticalScrollBar().addAdjustmentListener(e -> {
+            JScrollBar bar = (JScrollBar) e.getAdjustable();
+            if (bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - leaderboardTable.getRowHeight() * 5) {
+                loadMore();
+            }
+        });
+
         // Load data
-        loadLeaderboardData(tableModel);
+        loadMore();
 
         return panel;
     }
@@ -188,89 +199,193 @@ public class GlobalLeaderboardScreen extends JFrame {
         return button;
     }
 
-    private void loadLeaderboardData(DefaultTableModel tableModel) {
-        DatabaseReference ref = FirebaseDatabase.getInstance().getReference("leaderboard");
+    /**
+     * Follow the top PAGE_SIZE players live, then add one page of the players below
+     * them each time the user scrolls near the bottom. The window's listener reports
+     * players joining, changing and leaving it one at a time, and the table model
+     * updates just those rows. Pages below it are one-shot reads of PAGE_SIZE rows
+     * (as of when they were loaded), so scrolling to row N reads about N rows in total.
+     */
+    private void loadMore() {
+        if (loading || allLoaded) return;
+        if (!FirebaseConfig.isInitialized()) {
+            // Firebase starts on first use; load once it's ready
+            loading = true;
+            FirebaseConfig.ready().thenAccept(ready -> SwingUtilities.invokeLater(() -> {
+                loading = false;
+                if (!isDisplayable()) return; // Closed while waiting
+                if (ready) {
+                    loadMore();
+                } else {
+                    JOptionPane.showMessageDialog(this,
+                            "Failed to load leaderboard data.", "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            }));
+            return;
+        }
+        loading = true;
+        if (windowQuery == null) {
+            attachWindow();
+        } else {
+            loadNextPage();
+        }
+    }
 
-        ref.addListenerForSingleValueEvent(new ValueEventListener() {
+    private void attachWindow() {
+        // Firebase orders lowest score first, so the top players are the last ones
+        Query query = FirebaseDatabase.getInstance().getReference("leaderboard")
+                .orderByChild("score").limitToLast(PAGE_SIZE);
+        ChildEventListener listener = new ChildEventListener() {
             @Override
-            public void onDataChange(DataSnapshot snapshot) {
-                List<UserData> users = new ArrayList<>();
-
-                for (DataSnapshot child : snapshot.getChildren()) {
-                    String username = child.getKey();
-                    Integer level = child.child("level").getValue(Integer.class);
-                    Integer xp = child.child("xp").getValue(Integer.class);
-                    Integer completedTasks = child.child("completedTasks").getValue(Integer.class);
-
-                    if (username != null && level != null && xp != null && completedTasks != null) {
-                        users.add(new UserData(username, level, xp, completedTasks));
-                    }
+            public void onChildAdded(DataSnapshot snapshot, String previousChildName) {
+                LeaderboardTableModel.Entry entry = toEntry(snapshot);
+                if (entry != null) {
+                    SwingUtilities.invokeLater(() -> tableModel.put(entry));
                 }
+            }
 
-                // Sort by level, then XP
-                users.sort((u1, u2) -> {
-                    if (u2.getLevel() != u1.getLevel()) {
-                        return Integer.compare(u2.getLevel(), u1.getLevel());
+            @Override
+            public void onChildChanged(DataSnapshot snapshot, String previousChildName) {
+                onChildAdded(snapshot, previousChildName);
+            }
+
+            @Override
+            public void onChildRemoved(DataSnapshot snapshot) {
+                // Dropped out of the window (or the entry was deleted)
+                String username = snapshot.getKey();
+                LeaderboardTableModel.Entry last = toEntry(snapshot);
+                SwingUtilities.invokeLater(() -> {
+                    if (pagesLoaded > 0 && last != null) {
+                        tableModel.put(last); // Now somewhere in the pages below, with the stats it left with
                     } else {
-                        return Integer.compare(u2.getXp(), u1.getXp());
+                        tableModel.remove(username);
                     }
                 });
+            }
 
+            @Override
+            public void onChildMoved(DataSnapshot snapshot, String previousChildName) {
+                // The table model keeps its own order
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
                 SwingUtilities.invokeLater(() -> {
-                    tableModel.setRowCount(0); // clear table
-                    int rank = 1;
-                    for (UserData user : users) {
-                        // Display medals for the top 3 ranks
-                        String rankDisplay;
-                        switch (rank) {
-                            case 1:
-                                rankDisplay = "🥇 1";  // Gold medal
-                                break;
-                            case 2:
-                                rankDisplay = "🥈 2";  // Silver medal
-                                break;
-                            case 3:
-                                rankDisplay = "🥉 3";  // Bronze medal
-                                break;
-                            default:
-                                rankDisplay = String.valueOf(rank);
-                                break;
-                        }
+                    loading = false;
+                    JOptionPane.showMessageDialog(GlobalLeaderboardScreen.this,
+                            "Failed to load leaderboard data.", "Error", JOptionPane.ERROR_MESSAGE);
+                });
+            }
+        };
+        query.addChildEventListener(listener);
+        windowQuery = query;
+        windowListener = listener;
+
+        // Value events come after the initial child events, so this tells us when the window is
+        // filled, and its lowest row is where the first page below it ends
+        query.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                DataSnapshot lowest = snapshot.getChildren().iterator().hasNext()
+                        ? snapshot.getChildren().iterator().next() : null;
+                boolean full = snapshot.getChildrenCount() >= PAGE_SIZE;
+                SwingUtilities.invokeLater(() -> {
+                    loading = false;
+                    moveCursor(lowest);
+                    allLoaded = !full || lastKey == null;
+                });
+            }
+
+            @Override
+            public void onCancelled(DatabaseError error) {
+                SwingUtilities.invokeLater(() -> loading = false);
+            }
+        });
+    }
 
-                        tableModel.addRow(new Object[]{
-                                rankDisplay, user.getUsername(), user.getLevel(), user.getXp(), user.getCompletedTasks()
-                        });
-                        rank++;
+    /**
+     * Read the PAGE_SIZE players below the last row loaded, as in a one-shot page:
+     * endAt includes the boundary row, which is already shown, so ask for one extra.
+     */
+    private void loadNextPage() {
+        Query query = FirebaseDatabase.getInstance().getReference("leaderboard").orderByChild("score");
+        if (lastScore != null) {
+            query = query.endAt(lastScore, lastKey).limitToLast(PAGE_SIZE + 1);
+        } else {
+            // Entries without a score (not uploaded since scores were added) sort first, by key
+            query = query.endAt(null, lastKey).limitToLast(PAGE_SIZE + 1);
+        }
+        String boundary = lastKey;
+        query.addListenerForSingleValueEvent(new ValueEventListener() {
+            @Override
+            public void onDataChange(DataSnapshot snapshot) {
+                List<LeaderboardTableModel.Entry> page = new ArrayList<>();
+                DataSnapshot lowest = null;
+                for (DataSnapshot child : snapshot.getChildren()) {
+                    // Children arrive lowest score first, so the first one is where the next page ends
+                    if (lowest == null) lowest = child;
+                    if (boundary.equals(child.getKey())) continue;
+                    LeaderboardTableModel.Entry entry = toEntry(child);
+                    if (entry != null) page.add(entry);
+                }
+                boolean lastPage = snapshot.getChildrenCount() < PAGE_SIZE + 1;
+                DataSnapshot nextCursor = lowest;
+                SwingUtilities.invokeLater(() -> {
+                    for (LeaderboardTableModel.Entry entry : page) {
+                        // A player already in the live window keeps its live row
+                        if (tableModel.getRank(entry.getUsername()) < 0) {
+                            tableModel.put(entry);
+                        }
                     }
+                    pagesLoaded++;
+                    moveCursor(nextCursor);
+                    allLoaded = lastPage || boundary.equals(lastKey);
+                    loading = false;
                 });
             }
 
             @Override
             public void onCancelled(DatabaseError error) {
-                JOptionPane.showMessageDialog(GlobalLeaderboardScreen.this,
-                        "Failed to load leaderboard data.", "Error", JOptionPane.ERROR_MESSAGE);
+                SwingUtilities.invokeLater(() -> {
+                    loading = false;
+                    JOptionPane.showMessageDialog(GlobalLeaderboardScreen.this,
+                            "Failed to load leaderboard data.", "Error", JOptionPane.ERROR_MESSAGE);
+                });
             }
         });
     }
 
+    // Remember the lowest row read so far, where the next page ends
+    private void moveCursor(DataSnapshot lowest) {
+        if (lowest == null) return;
+        lastKey = lowest.getKey();
+        lastScore = lowest.child("score").getValue(Double.class);
+    }
 
-    // Helper class
-    private static class UserData {
-        private final String username;
-        private final int level;
-        private final int xp;
-        private final int completedTasks;
+    private void detachWindow() {
+        if (windowQuery != null) {
+            windowQuery.removeEventListener(windowListener);
+            windowQuery = null;
+            windowListener = null;
+        }
+    }
+
+    private static LeaderboardTableModel.Entry toEntry(DataSnapshot child) {
+        String username = child.getKey();
+        Integer level = child.child("level").getValue(Integer.class);
+        Integer xp = child.child("xp").getValue(Integer.class);
+        Integer completedTasks = child.child("completedTasks").getValue(Integer.class);
 
-        public UserData(String username, int level, int xp, int completedTasks) {
-            this.username = username;
-            this.level = level;
-            this.xp = xp;
-            this.completedTasks = completedTasks;
+        if (username != null && level != null && xp != null && completedTasks != null) {
+            return new LeaderboardTableModel.Entry(username, level, xp, completedTasks);
         }
+        return null;
+    }
 
-        public String getUsername() { return username; }
-        public int getLevel() { return level; }
-        public int getXp() { return xp; }
-        public int getCompletedTasks() { return completedTasks; }
+    @Override
+    public void dispose() {
+        // Stop following the leaderboard once the screen is closed
+        detachWindow();
+        super.dispose();
     }
 }
\ No newline at end of file
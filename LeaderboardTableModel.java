@@ -2,23 +2,127 @@
 package ui;
 
 import models.User;
+import util.OrderStatisticTree;
 
 import javax.swing.table.AbstractTableModel;
-import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
+/**
+ * Leaderboard rows kept in rank order (level, then xp, highest first).
+ * Rows can be added, changed and removed one at a time: finding a row and its
+ * rank is O(log n), and only the affected rows are reported to the table.
+ * Use from the Swing thread.
+ */
 public class LeaderboardTableModel extends AbstractTableModel {
-    private final String[] columns = {"Rank", "Username", "XP", "Level"};
-    private List<User> users = new ArrayList<>();
+    private final String[] columns = {"RANK", "USERNAME", "LEVEL", "XP", "TASKS"};
 
+    /**
+     * One player's leaderboard stats.
+     */
+    public static final class Entry {
+        private final String username;
+        private final int level;
+        private final int xp;
+        private final int completedTasks;
+
+        public Entry(String username, int level, int xp, int completedTasks) {
+            this.username = username;
+            this.level = level;
+            this.xp = xp;
+            this.completedTasks = completedTasks;
+        }
+
+        public String getUsername() { return username; }
+        public int getLevel() { return level; }
+        public int getXp() { return xp; }
+        public int getCompletedTasks() { return completedTasks; }
+
+        boolean sameAs(Entry other) {
+            return level == other.level && xp == other.xp && completedTasks == other.completedTasks;
+        }
+    }
+
+    private static final Comparator<Entry> RANKING = Comparator
+            .comparingInt(Entry::getLevel).reversed()
+            .thenComparing(Comparator.comparingInt(Entry::getXp).reversed())
+            .thenComparing(Entry::getUsername);
+
+    private final OrderStatisticTree<Entry> ranking = new OrderStatisticTree<>(RANKING);
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    /**
+     * Replace every row (for loading a full list at once).
+     * @param users the users to show
+     */
     public void setUsers(List<User> users) {
-        this.users = users;
+        ranking.clear();
+        entries.clear();
+        for (User user : users) {
+            Entry entry = new Entry(user.getUsername(), user.getLevel(), user.getXp(), user.getTotalCompletedTasks());
+            if (entries.put(entry.getUsername(), entry) == null) {
+                ranking.add(entry);
+            }
+        }
         fireTableDataChanged();
     }
 
+    /**
+     * Add a player or update their stats, moving their row if their rank changed.
+     * @param entry the player's current stats
+     */
+    public void put(Entry entry) {
+        Entry old = entries.get(entry.getUsername());
+        if (old != null) {
+            if (old.sameAs(entry)) return;
+            int oldRow = ranking.indexOf(old);
+            ranking.remove(old);
+            ranking.add(entry);
+            entries.put(entry.getUsername(), entry);
+            int newRow = ranking.indexOf(entry);
+            if (oldRow == newRow) {
+                fireTableRowsUpdated(newRow, newRow);
+                return;
+            }
+            // Report the move as delete then insert, with the model matching each step
+            ranking.remove(entry);
+            fireTableRowsDeleted(oldRow, oldRow);
+            ranking.add(entry);
+            fireTableRowsInserted(newRow, newRow);
+            return;
+        }
+
+        entries.put(entry.getUsername(), entry);
+        ranking.add(entry);
+        int row = ranking.indexOf(entry);
+        fireTableRowsInserted(row, row);
+    }
+
+    /**
+     * Remove a player's row.
+     * @param username the player to remove
+     */
+    public void remove(String username) {
+        Entry old = entries.remove(username);
+        if (old == null) return;
+        int row = ranking.indexOf(old);
+        ranking.remove(old);
+        fireTableRowsDeleted(row, row);
+    }
+
+    /**
+     * @return the player's rank (1 = first), or -1 if they aren't on the board
+     */
+    public int getRank(String username) {
+        Entry entry = entries.get(username);
+        return entry == null ? -1 : ranking.indexOf(entry) + 1;
+    }
+
     @Override
     public int getRowCount() {
-        return users.size();
+        return ranking.size();
     }
 
     @Override
@@ -33,13 +137,24 @@ public class LeaderboardTableModel extends AbstractTableModel {
 
     @Override
     public Object getValueAt(int rowIndex, int columnIndex) {
-        User user = users.get(rowIndex);
+        Entry entry = ranking.get(rowIndex);
         return switch (columnIndex) {
-            case 0 -> rowIndex + 1; // Rank
-            case 1 -> user.getUsername();
-            case 2 -> user.getXp();
-            case 3 -> user.getLevel();
+            case 0 -> rankDisplay(rowIndex + 1);
+            case 1 -> entry.getUsername();
+            case 2 -> entry.getLevel();
+            case 3 -> entry.getXp();
+            case 4 -> entry.getCompletedTasks();
             default -> null;
         };
     }
-}
\ No newline at end of file
+
+    // Display medals for the top 3 ranks
+    private static String rankDisplay(int rank) {
+        return switch (rank) {
+            case 1 -> "🥇 1";  // Gold medal
+            case 2 -> "🥈 2";  // Silver medal
+            case 3 -> "🥉 3";  // Bronze medal
+            default -> String.valueOf(rank);
+        };
+    }
+}
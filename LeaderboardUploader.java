@@ -0,0 +1,297 @@
+//util->LeaderboardUploader
+package util;
+
+import models.User;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Uploads leaderboard stats (level, xp, completedTasks) to Firebase.
+ * Uploads are held for a short window: repeated uploads for one user keep only
+ * the latest stats, and every user waiting at the end of the window goes out in
+ * a single multi-path updateChildren call. Stats that match what Firebase last
+ * confirmed for a user are skipped, and otherwise only the fields that changed are written.
+ *
+ * Each entry also gets a "score" combining level and xp, so the leaderboard can be
+ * read a page at a time with orderByChild("score") instead of downloaded and sorted.
+ *
+ * Writes go through SyncOutbox, so stats uploaded while offline are kept on disk
+ * and sent (with retries) once Firebase can be reached again.
+ */
+public class LeaderboardUploader {
+    private static final long DEFAULT_WINDOW_MS = 1000;
+
+    private static final LeaderboardUploader instance = new LeaderboardUploader(DEFAULT_WINDOW_MS);
+
+    // Level goes above xp in the score; both fit exactly in a double while xp < 2^32
+    private static final double LEVEL_WEIGHT = 4294967296.0;
+
+    // What goes into leaderboard/<username>
+    private static final class Stats {
+        final int level;
+        final int xp;
+        final int completedTasks;
+
+        Stats(User user) {
+            this.level = user.getLevel();
+            this.xp = user.getXp();
+            // Use the totalCompletedTasks counter so completed tasks that were deleted still count
+            this.completedTasks = user.getTotalCompletedTasks();
+        }
+
+        boolean sameAs(Stats other) {
+            return other != null && level == other.level && xp == other.xp && completedTasks == other.completedTasks;
+        }
+    }
+
+    private final long windowMs;
+    private final SyncOutbox outbox;
+    private final ScheduledExecutorService uploader;
+
+    // Everything below is guarded by lock
+    private final Object lock = new Object();
+    private final Map<String, Stats> pending = new LinkedHashMap<>();
+    // Stats Firebase has confirmed for each user
+    private final Map<String, Stats> lastSent = new HashMap<>();
+    private boolean drainScheduled = false;
+    private int inFlight = 0;
+    private long uploadsRequested = 0;
+    private long uploadsCoalesced = 0;
+    private long uploadsUnchanged = 0;
+    private long writesIssued = 0;
+    private long fieldsWritten = 0;
+    private long fieldsSkipped = 0;
+    private long bytesWritten = 0;
+    private long bytesAvoided = 0;
+
+    public LeaderboardUploader(long windowMs) {
+        this(windowMs, SyncOutbox.getInstance());
+    }
+
+    /**
+     * @param windowMs how long uploads are held to be combined
+     * @param outbox where the writes are queued for Firebase
+     */
+    public LeaderboardUploader(long windowMs, SyncOutbox outbox) {
+        this.windowMs = windowMs;
+        this.outbox = outbox;
+        this.uploader = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "leaderboard-upload");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static LeaderboardUploader getInstance() {
+        return instance;
+    }
+
+    /**
+     * Queue a user's current stats for upload. Safe to call on every change.
+     * @param user the user whose stats should be on the leaderboard
+     */
+    public void upload(User user) {
+        if (user == null || user.getUsername() == null) return;
+        Stats stats = new Stats(user);
+
+        synchronized (lock) {
+            uploadsRequested++;
+            if (pending.get(user.getUsername()) == null && stats.sameAs(lastSent.get(user.getUsername()))) {
+                uploadsUnchanged++;
+                return;
+            }
+            if (pending.put(user.getUsername(), stats) != null) {
+                uploadsCoalesced++;
+            }
+            scheduleDrain(windowMs);
+        }
+    }
+
+    /**
+     * Send everything queued now and wait (briefly) for Firebase to confirm it.
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * @return true if nothing is left queued or in flight
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        CountDownLatch drained = new CountDownLatch(1);
+        uploader.execute(() -> {
+            drain();
+            drained.countDown();
+        });
+
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        try {
+            if (!drained.await(timeout, unit)) return false;
+            synchronized (lock) {
+                while (inFlight > 0) {
+                    long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                    if (remainingMs <= 0) return false;
+                    lock.wait(remainingMs);
+                }
+                return pending.isEmpty();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Sort key for the leaderboard: higher level first, then higher xp.
+     * @return the value stored in leaderboard/<username>/score
+     */
+    public static double score(int level, int xp) {
+        return level * LEVEL_WEIGHT + Math.max(0, xp);
+    }
+
+    private void scheduleDrain(long delayMs) {
+        // Caller holds lock
+        if (!drainScheduled) {
+            drainScheduled = true;
+            uploader.schedule(this::drain, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void drain() {
+        Map<String, Stats> batch;
+        Map<String, Stats> previous = new HashMap<>();
+        synchronized (lock) {
+            drainScheduled = false;
+            if (pending.isEmpty()) return;
+            batch = new LinkedHashMap<>(pending);
+            pending.clear();
+            for (String username : batch.keySet()) {
+                previous.put(username, lastSent.get(username));
+            }
+        }
+
+        // One write for the whole batch: leaderboard/<user>/<field> paths, only for fields
+        // that differ from what Firebase has confirmed
+        Map<String, Object> updates = new HashMap<>();
+        long[] skipped = new long[2]; // fields, bytes
+        for (Map.Entry<String, Stats> entry : batch.entrySet()) {
+            String path = "leaderboard/" + entry.getKey();
+            Stats stats = entry.getValue();
+            Stats before = previous.get(entry.getKey());
+            boolean level = before == null || before.level != stats.level;
+            boolean xp = before == null || before.xp != stats.xp;
+            put(updates, skipped, level, path + "/level", stats.level);
+            put(updates, skipped, xp, path + "/xp", stats.xp);
+            put(updates, skipped, before == null || before.completedTasks != stats.completedTasks,
+                    path + "/completedTasks", stats.completedTasks);
+            put(updates, skipped, level || xp, path + "/score", score(stats.level, stats.xp));
+        }
+        synchronized (lock) {
+            fieldsSkipped += skipped[0];
+            bytesAvoided += skipped[1];
+            if (updates.isEmpty()) return; // Firebase already has all of it
+            writesIssued++;
+            inFlight++;
+            fieldsWritten += updates.size();
+            for (Map.Entry<String, Object> update : updates.entrySet()) {
+                bytesWritten += size(update.getKey(), update.getValue());
+            }
+        }
+
+        outbox.submit(updates).whenComplete((v, error) -> {
+            if (error != null) {
+                System.err.println("Could not upload stats for " + batch.size() + " user(s): "
+                        + SyncExecutor.unwrap(error).getMessage());
+            } else {
+                System.out.println("✅ Successfully uploaded stats for " + batch.size() + " user(s) to Firebase.");
+            }
+            finished(error == null ? batch : null);
+        });
+    }
+
+    private static void put(Map<String, Object> updates, long[] skipped, boolean changed, String path, Object value) {
+        if (changed) {
+            updates.put(path, value);
+        } else {
+            skipped[0]++;
+            skipped[1] += size(path, value);
+        }
+    }
+
+    // Rough size of one field in the update sent to Firebase: "path":value,
+    private static long size(String path, Object value) {
+        return path.length() + String.valueOf(value).length() + 4;
+    }
+
+    // confirmed: the stats Firebase now has, or null if the write failed
+    private void finished(Map<String, Stats> confirmed) {
+        synchronized (lock) {
+            if (confirmed != null) {
+                // The outbox delivers in order, so a later confirmation is always the newer one
+                lastSent.putAll(confirmed);
+            }
+            inFlight--;
+            lock.notifyAll();
+        }
+    }
+
+    public long getUploadsRequested() {
+        synchronized (lock) {
+            return uploadsRequested;
+        }
+    }
+
+    // Uploads replaced by a newer one for the same user before they were sent
+    public long getUploadsCoalesced() {
+        synchronized (lock) {
+            return uploadsCoalesced;
+        }
+    }
+
+    // Uploads skipped because the same stats were already sent
+    public long getUploadsUnchanged() {
+        synchronized (lock) {
+            return uploadsUnchanged;
+        }
+    }
+
+    public long getWritesIssued() {
+        synchronized (lock) {
+            return writesIssued;
+        }
+    }
+
+    // Fields written to the leaderboard, and fields left out because they hadn't changed
+    public long getFieldsWritten() {
+        synchronized (lock) {
+            return fieldsWritten;
+        }
+    }
+
+    public long getFieldsSkipped() {
+        synchronized (lock) {
+            return fieldsSkipped;
+        }
+    }
+
+    // Approximate size of the fields written, and of the unchanged fields that were left out
+    public long getBytesWritten() {
+        synchronized (lock) {
+            return bytesWritten;
+        }
+    }
+
+    public long getBytesAvoided() {
+        synchronized (lock) {
+            return bytesAvoided;
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+}
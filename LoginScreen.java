@@ -217,7 +217,10 @@ public class LoginScreen extends JFrame {
                         }
 
                         // Clean up any existing rooms for this user
-                        firebase.FirebaseRoomManager.deleteUserRooms(username);
+                        firebase.FirebaseRoomManager.deleteUserRoomsAsync(username).exceptionally(e -> {
+                            System.err.println("Error cleaning up rooms: " + e.getMessage());
+                            return false;
+                        });
 
                         setMessage("✅ Welcome back, " + username + "!", new Color(0, 128, 0));
                         openMainMenu(user);
@@ -229,17 +232,21 @@ public class LoginScreen extends JFrame {
                 });
             })
             .exceptionally(ex -> {
-                SwingUtilities.invokeLater(() -> {
-                    setMessage("⚠ Login error. Trying offline mode...", Color.RED);
-                    // Fallback to offline login
-                    if (DataManager.userExists(username) && DataManager.verifyPassword(username, password)) {
-                        User user = DataManager.loadUser(username);
-                        openMainMenu(user);
-                    } else {
-                        setMessage("❗ Login failed. Check connection or credentials.", Color.RED);
-                    }
-                    loginButton.setEnabled(true);
-                    signUpButton.setEnabled(true);
+                SwingUtilities.invokeLater(() -> setMessage("⚠ Login error. Trying offline mode...", Color.RED));
+                // Fallback to offline login
+                DataManager.verifyPasswordAsync(username, password).whenComplete((isValid, error) -> {
+                    SwingUtilities.invokeLater(() -> {
+                        if (error != null) {
+                            setMessage("❗ Could not check the password. Please try again.", Color.RED);
+                        } else if (isValid) {
+                            User user = DataManager.loadUser(username);
+                            openMainMenu(user);
+                        } else {
+                            setMessage("❗ Login failed. Check connection or credentials.", Color.RED);
+                        }
+                        loginButton.setEnabled(true);
+                        signUpButton.setEnabled(true);
+                    });
                 });
                 return null;
             });
@@ -254,8 +261,8 @@ public class LoginScreen extends JFrame {
             return;
         }
 
-        if (username.contains(" ") || username.contains("@")) {
-            setMessage("❗ Username cannot contain spaces or @ symbols.", Color.RED);
+        if (!username.matches("[^\\s@.#$\\[\\]/]+")) {
+            setMessage("❗ Username cannot contain spaces or @ . # $ [ ] / symbols.", Color.RED);
             return;
         }
 
@@ -292,12 +299,20 @@ public class LoginScreen extends JFrame {
                     if (!DataManager.userExists(username)) {
                         User newUser = new User(username);
                         DataManager.saveUser(newUser);
-                        DataManager.savePassword(username, password);
-                        setMessage("✅ Local account created.", new Color(0, 128, 0));
-                        openMainMenu(newUser);
-                    } else {
-                        setMessage("❗ Username already exists locally.", Color.RED);
+                        DataManager.savePasswordAsync(username, password).whenComplete((v, error) ->
+                            SwingUtilities.invokeLater(() -> {
+                                if (error == null) {
+                                    setMessage("✅ Local account created.", new Color(0, 128, 0));
+                                    openMainMenu(newUser);
+                                } else {
+                                    setMessage("❗ Could not create local account.", Color.RED);
+                                    loginButton.setEnabled(true);
+                                    signUpButton.setEnabled(true);
+                                }
+                            }));
+                        return;
                     }
+                    setMessage("❗ Username already exists locally.", Color.RED);
                     loginButton.setEnabled(true);
                     signUpButton.setEnabled(true);
                 });
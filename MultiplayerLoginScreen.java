@@ -27,6 +27,7 @@ public class MultiplayerLoginScreen extends JFrame {
     private final JLabel messageLabel = new JLabel(" ");
     private JLabel roomInfoLabel;
     private JLabel timerInfoLabel;
+    private boolean signingIn = false;
 
     // Constructor for Home mode and creating Away mode
     public MultiplayerLoginScreen(int maxPlayers, boolean isAwayMode) {
@@ -194,19 +195,35 @@ public class MultiplayerLoginScreen extends JFrame {
             return;
         }
 
-        if (!DataManager.verifyPassword(username, password)) {
-            messageLabel.setText("❌ Incorrect password.");
-            return;
+        if (signingIn) {
+            return; // Already checking a password
         }
+        signingIn = true;
+        messageLabel.setText("⏳ Signing in...");
+
+        // Password hashing is slow on purpose, so keep it off the Swing thread
+        DataManager.verifyPasswordAsync(username, password).whenComplete((isValid, error) -> {
+            SwingUtilities.invokeLater(() -> {
+                signingIn = false;
+                if (error != null) {
+                    messageLabel.setText("⚠ Could not check the password. Please try again.");
+                    return;
+                }
+                if (!isValid) {
+                    messageLabel.setText("❌ Incorrect password.");
+                    return;
+                }
 
-        User user = DataManager.loadUser(username);
-        if (user == null) {
-            messageLabel.setText("⚠ Failed to load user data.");
-            return;
-        }
+                User user = DataManager.loadUser(username);
+                if (user == null) {
+                    messageLabel.setText("⚠ Failed to load user data.");
+                    return;
+                }
 
-        loggedInUsers.add(user);
-        nextOrLaunch();
+                loggedInUsers.add(user);
+                nextOrLaunch();
+            });
+        });
     }
 
     private void promptGuestUsername() {
@@ -245,73 +245,87 @@ public class MultiplayerModeSelectionScreen extends JFrame {
 
     private void createRoomWithRetry(User user, int maxPlayers) {
         // Try to create a room with retry logic if the room ID already exists
-        int maxRetries = 3;
-        boolean roomCreated = false;
-
-        for (int attempt = 0; attempt < maxRetries && !roomCreated; attempt++) {
-            // Generate a new room ID for each attempt
-            final String roomId = generateRoomId(); // Make roomId final for this iteration
-
-            // Try to create the room with the current ID
-            List<User> users = new ArrayList<>();
-            users.add(user);
-
-            // Check if room exists before trying to create it
-            if (firebase.FirebaseRoomManager.roomExists(roomId)) {
-                System.out.println("Room " + roomId + " already exists, trying another ID (attempt " + (attempt + 1) + ")");
-                continue;
-            }
-
-            // Create the room
-            MultiplayerStudyScreen studyScreen = new MultiplayerStudyScreen(
-                    users,
-                    MainMenu.getCurrentInstance(),
-                    true,
-                    roomId,
-                    maxPlayers,
-                    true,  // Enable competitive timer mode
-                    30     // Set timer for 30 minutes
-            );
-
-            // Check if the room was created successfully (the screen is visible)
-            if (studyScreen.isVisible()) {
-                roomCreated = true;
+        createRoomWithRetry(user, maxPlayers, 0);
+    }
 
-                // Show the room ID in a dialog that allows easy copying
-                JPanel panel = new JPanel(new BorderLayout(10, 10));
-                panel.setPreferredSize(new Dimension(300, 100));
+    private void createRoomWithRetry(User user, int maxPlayers, int attempt) {
+        int maxRetries = 3;
+        if (attempt >= maxRetries) {
+            JOptionPane.showMessageDialog(null,
+                    "Failed to create a room after multiple attempts.\nPlease try again later.",
+                    "Room Creation Failed",
+                    JOptionPane.ERROR_MESSAGE);
+            return;
+        }
 
-                JLabel messageLabel = new JLabel("<html><div style='text-align: center;'>" +
-                        "Room created successfully!<br>Share this ID with your friends:</div></html>");
-                messageLabel.setHorizontalAlignment(SwingConstants.CENTER);
+        // Generate a new room ID for each attempt
+        final String roomId = generateRoomId();
+
+        // Create the room with this user in it in one transaction, without blocking the Swing thread.
+        // If the ID is already taken the transaction aborts and we try another one.
+        firebase.FirebaseRoomManager.createRoomAsync(roomId, maxPlayers, user)
+                .exceptionally(e -> {
+                    System.err.println("Error creating room: " + e.getMessage());
+                    return false;
+                })
+                .thenAccept(created -> SwingUtilities.invokeLater(() -> {
+                    if (!created) {
+                        System.out.println("Could not create room " + roomId + ", trying another ID (attempt " + (attempt + 1) + ")");
+                        createRoomWithRetry(user, maxPlayers, attempt + 1);
+                    } else if (!openCreatedRoom(user, maxPlayers, roomId)) {
+                        firebase.FirebaseRoomManager.leaveRoom(roomId, user.getUsername());
+                        createRoomWithRetry(user, maxPlayers, attempt + 1);
+                    }
+                }));
+    }
 
-                JTextField roomIdField = new JTextField(roomId);
-                roomIdField.setFont(new Font("Monospaced", Font.BOLD, 16));
-                roomIdField.setHorizontalAlignment(JTextField.CENTER);
-                roomIdField.setEditable(false);
+    private boolean openCreatedRoom(User user, int maxPlayers, String roomId) {
+        List<User> users = new ArrayList<>();
+        users.add(user);
+
+        // Create the room
+        MultiplayerStudyScreen studyScreen = new MultiplayerStudyScreen(
+                users,
+                MainMenu.getCurrentInstance(),
+                true,
+                roomId,
+                maxPlayers,
+                true,  // Enable competitive timer mode
+                30     // Set timer for 30 minutes
+        );
 
-                JButton copyButton = new JButton("Copy to Clipboard");
-                copyButton.addActionListener(e -> {
-                    StringSelection selection = new StringSelection(roomId);
-                    Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
-                    clipboard.setContents(selection, null);
-                    JOptionPane.showMessageDialog(null, "Room ID copied to clipboard!");
-                });
+        // Check if the room was created successfully (the screen is visible)
+        if (!studyScreen.isVisible()) {
+            return false;
+        }
 
-                panel.add(messageLabel, BorderLayout.NORTH);
-                panel.add(roomIdField, BorderLayout.CENTER);
-                panel.add(copyButton, BorderLayout.SOUTH);
+        // Show the room ID in a dialog that allows easy copying
+        JPanel panel = new JPanel(new BorderLayout(10, 10));
+        panel.setPreferredSize(new Dimension(300, 100));
+
+        JLabel messageLabel = new JLabel("<html><div style='text-align: center;'>" +
+                "Room created successfully!<br>Share this ID with your friends:</div></html>");
+        messageLabel.setHorizontalAlignment(SwingConstants.CENTER);
+
+        JTextField roomIdField = new JTextField(roomId);
+        roomIdField.setFont(new Font("Monospaced", Font.BOLD, 16));
+        roomIdField.setHorizontalAlignment(JTextField.CENTER);
+        roomIdField.setEditable(false);
+
+        JButton copyButton = new JButton("Copy to Clipboard");
+        copyButton.addActionListener(e -> {
+            StringSelection selection = new StringSelection(roomId);
+            Clipboard clipboard = Toolkit.getDefaultToolkit().getSystemClipboard();
+            clipboard.setContents(selection, null);
+            JOptionPane.showMessageDialog(null, "Room ID copied to clipboard!");
+        });
 
-                JOptionPane.showMessageDialog(null, panel, "Room Created", JOptionPane.INFORMATION_MESSAGE);
-            }
-        }
+        panel.add(messageLabel, BorderLayout.NORTH);
+        panel.add(roomIdField, BorderLayout.CENTER);
+        panel.add(copyButton, BorderLayout.SOUTH);
 
-        if (!roomCreated) {
-            JOptionPane.showMessageDialog(null,
-                    "Failed to create a room after multiple attempts.\nPlease try again later.",
-                    "Room Creation Failed",
-                    JOptionPane.ERROR_MESSAGE);
-        }
+        JOptionPane.showMessageDialog(null, panel, "Room Created", JOptionPane.INFORMATION_MESSAGE);
+        return true;
     }
 
     private void openAwayMode() {
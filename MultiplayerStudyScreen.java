@@ -4,7 +4,6 @@ import models.Task;
 import models.User;
 import util.DataManager;
 import util.ThemeManager;
-import com.google.firebase.database.ValueEventListener;
 
 import javax.swing.*;
 import javax.swing.border.TitledBorder;
@@ -12,9 +11,12 @@ import java.awt.*;
 import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.StringSelection;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class MultiplayerStudyScreen extends JFrame {
     private final List<User> users;
@@ -36,8 +38,11 @@ public class MultiplayerStudyScreen extends JFrame {
 
     private JLabel roomInfoLabel;
     private JButton copyRoomIdButton;
+    private JTabbedPane tabbedPane;
     // Add Firebase room listener field
-    private ValueEventListener roomListener;
+    private firebase.FirebaseRoomManager.RoomSubscription roomListener;
+    // Users in the Firebase room, kept up to date by the room listener
+    private final Set<String> roomMembers = new LinkedHashSet<>();
 
     // Constructor for backward compatibility
     public MultiplayerStudyScreen(List<User> users, MainMenu mainMenu) {
@@ -92,12 +97,13 @@ public class MultiplayerStudyScreen extends JFrame {
             public void windowClosing(java.awt.event.WindowEvent windowEvent) {
                 // If in away mode, leave the room in Firebase
                 if (isAwayMode && roomId != null && !users.isEmpty()) {
-                    firebase.FirebaseRoomManager.leaveRoom(roomId, users.get(0).getUsername());
-
-                    // Remove the room listener
+                    // Remove the room listener first, which stops our heartbeat
                     if (roomListener != null) {
                         firebase.FirebaseRoomManager.removeRoomListener(roomId, roomListener);
+                        roomListener = null;
                     }
+
+                    firebase.FirebaseRoomManager.leaveRoom(roomId, users.get(0).getUsername());
                 }
 
                 // If competitive timer is running, stop it
@@ -126,7 +132,7 @@ public class MultiplayerStudyScreen extends JFrame {
         contentPanel.setBackground(themeManager.getColor("background"));
 
         // Create tabbed pane for users
-        JTabbedPane tabbedPane = new JTabbedPane();
+        tabbedPane = new JTabbedPane();
 
         // If competitive mode is enabled, create a prominent timer panel
         if (competitiveTimerMode) {
@@ -196,6 +202,11 @@ public class MultiplayerStudyScreen extends JFrame {
 
         add(contentPanel, BorderLayout.CENTER);
 
+        // Follow users joining and leaving the online room
+        if (isAwayMode && roomId != null && !users.isEmpty()) {
+            roomListener = firebase.FirebaseRoomManager.listenForRoomChanges(roomId, users.get(0).getUsername(), this);
+        }
+
         setVisible(true);
     }
 
@@ -522,6 +533,8 @@ public class MultiplayerStudyScreen extends JFrame {
                     for (int i = 0; i < completedTasksInSession; i++) {
                         mainUser.incrementCompletedTasksCounter();
                     }
+                    // The session's progress was already counted (ProgressSync) as it was made
+                    mainUser.clearUnrecordedProgress();
 
                     // Transfer newly completed tasks from multiplayer session to main account
                     for (Task task : user.getTasks()) {
@@ -611,6 +624,8 @@ public class MultiplayerStudyScreen extends JFrame {
                     for (int i = 0; i < completedTasksInSession; i++) {
                         mainUser.incrementCompletedTasksCounter();
                     }
+                    // The session's progress was already counted (ProgressSync) as it was made
+                    mainUser.clearUnrecordedProgress();
 
                     // Transfer newly completed tasks from multiplayer session to main account
                     for (Task task : user.getTasks()) {
@@ -716,9 +731,42 @@ public class MultiplayerStudyScreen extends JFrame {
     private void refreshRoomParticipants(boolean showNotifications) {
         if (!isAwayMode || roomId == null) return;
 
-        // Get users from Firebase
-        List<String> roomUsers = firebase.FirebaseRoomManager.getUsersInRoom(roomId);
+        // Get users without blocking the UI (from the room listener's cache when it has them,
+        // otherwise from Firebase), then update the tabs on the Swing thread
+        firebase.FirebaseRoomManager.getUsersInRoomAsync(roomId).whenComplete((roomUsers, error) -> {
+            if (error != null) {
+                System.err.println("Error refreshing room participants: " + error.getMessage());
+                return;
+            }
+            SwingUtilities.invokeLater(() -> addRoomParticipants(roomUsers, showNotifications));
+        });
+    }
+
+    private void addRoomParticipants(List<String> roomUsers, boolean showNotifications) {
+        int added = addParticipantTabs(roomUsers);
+        if (added > 0) {
+            updateRoomInfo(users.size());
 
+            if (showNotifications) {
+                JOptionPane.showMessageDialog(this,
+                        added + " new user(s) joined the room!",
+                        "Users Joined",
+                        JOptionPane.INFORMATION_MESSAGE);
+            }
+        } else if (showNotifications) {
+            JOptionPane.showMessageDialog(this,
+                    "No new users found in the room.",
+                    "Room Refresh",
+                    JOptionPane.INFORMATION_MESSAGE);
+        }
+    }
+
+    /**
+     * Load room users we don't have a tab for yet and add their tabs
+     * @param roomUsers usernames in the room
+     * @return how many users were added
+     */
+    private int addParticipantTabs(List<String> roomUsers) {
         // If there are new users that we don't have in our local list, load them
         List<User> newUsers = new ArrayList<>();
         for (String username : roomUsers) {
@@ -739,28 +787,62 @@ public class MultiplayerStudyScreen extends JFrame {
             }
         }
 
-        // If we found new users, add them to our local list and update the UI
-        if (!newUsers.isEmpty()) {
-            for (User newUser : newUsers) {
-                users.add(newUser);
-                JPanel panel = createUserPanel(newUser);
-                ((JTabbedPane) getContentPane().getComponent(1)).addTab("👤 " + newUser.getUsername(), panel);
-            }
+        // Add them to our local list and the UI
+        for (User newUser : newUsers) {
+            users.add(newUser);
+            JPanel panel = createUserPanel(newUser);
+            tabbedPane.addTab("👤 " + newUser.getUsername(), panel);
+        }
+        return newUsers.size();
+    }
 
-            updateRoomInfo(users.size());
+    /**
+     * A user joined the room (or was already in it when we started listening)
+     * @param username the user who joined
+     */
+    public void roomUserJoined(String username) {
+        if (roomMembers.add(username)) {
+            addParticipantTabs(Collections.singletonList(username));
+            updateRoomInfo(roomMembers.size());
+        }
+    }
 
-            if (showNotifications) {
-                JOptionPane.showMessageDialog(this,
-                        newUsers.size() + " new user(s) joined the room!",
-                        "Users Joined",
-                        JOptionPane.INFORMATION_MESSAGE);
-            }
-        } else if (showNotifications) {
-            JOptionPane.showMessageDialog(this,
-                    "No new users found in the room.",
-                    "Room Refresh",
-                    JOptionPane.INFORMATION_MESSAGE);
+    /**
+     * A room member's data (their level, or just their heartbeat) changed
+     * @param username the user whose data changed
+     * @param level the user's level as stored in the room
+     */
+    public void roomUserUpdated(String username, int level) {
+        // Tabs show the local copy of each user, so only make sure they're counted
+        roomUserJoined(username);
+    }
+
+    /**
+     * A user left the room. Their tab stays so their progress this session is still visible.
+     * @param username the user who left
+     */
+    public void roomUserLeft(String username) {
+        if (roomMembers.remove(username)) {
+            updateRoomInfo(roomMembers.size());
+        }
+    }
+
+    /**
+     * The room was deleted. dispose() doesn't go through windowClosing, so stop
+     * listening to the room (and our heartbeat) here before closing the screen.
+     */
+    public void roomClosed() {
+        if (roomListener != null) {
+            firebase.FirebaseRoomManager.removeRoomListener(roomId, roomListener);
+            roomListener = null;
         }
+
+        if (competitiveTimerMode && competitiveTimer != null && competitiveTimer.isTimerRunning()) {
+            competitiveTimer.stopTimer();
+        }
+
+        syncUsersWithMainAccounts();
+        dispose();
     }
 
     /**
@@ -0,0 +1,169 @@
+//util->OrderStatisticTree
+package util;
+
+import java.util.Comparator;
+import java.util.Random;
+
+/**
+ * Sorted set that can also find an element's position and the element at a
+ * position in O(log n): a treap (randomly balanced binary search tree) whose
+ * nodes know the size of their subtree. Elements must be distinct under the
+ * comparator. Not thread-safe.
+ */
+public class OrderStatisticTree<T> {
+    private static final class Node<T> {
+        final T value;
+        final int priority;
+        int size = 1;
+        Node<T> left;
+        Node<T> right;
+
+        Node(T value, int priority) {
+            this.value = value;
+            this.priority = priority;
+        }
+    }
+
+    private final Comparator<? super T> comparator;
+    private final Random random = new Random();
+    private Node<T> root;
+
+    public OrderStatisticTree(Comparator<? super T> comparator) {
+        this.comparator = comparator;
+    }
+
+    public int size() {
+        return size(root);
+    }
+
+    public void clear() {
+        root = null;
+    }
+
+    /**
+     * @return true if the value was added, false if an equal one is already present
+     */
+    public boolean add(T value) {
+        if (indexOf(value) >= 0) return false;
+        root = insert(root, new Node<>(value, random.nextInt()));
+        return true;
+    }
+
+    /**
+     * @return true if the value was present and has been removed
+     */
+    public boolean remove(T value) {
+        int before = size();
+        root = remove(root, value);
+        return size() < before;
+    }
+
+    /**
+     * @return the value's position in sorted order (0 = first), or -1 if it isn't present
+     */
+    public int indexOf(T value) {
+        int index = 0;
+        Node<T> node = root;
+        while (node != null) {
+            int c = comparator.compare(value, node.value);
+            if (c < 0) {
+                node = node.left;
+            } else if (c > 0) {
+                index += size(node.left) + 1;
+                node = node.right;
+            } else {
+                return index + size(node.left);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return the value at a position in sorted order
+     */
+    public T get(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("Index " + index + " out of bounds for size " + size());
+        }
+        Node<T> node = root;
+        while (true) {
+            int leftSize = size(node.left);
+            if (index < leftSize) {
+                node = node.left;
+            } else if (index == leftSize) {
+                return node.value;
+            } else {
+                index -= leftSize + 1;
+                node = node.right;
+            }
+        }
+    }
+
+    private Node<T> insert(Node<T> node, Node<T> added) {
+        if (node == null) return added;
+        if (added.priority > node.priority) {
+            // The new node goes here; split the subtree around it
+            split(node, added);
+            return update(added);
+        }
+        if (comparator.compare(added.value, node.value) < 0) {
+            node.left = insert(node.left, added);
+        } else {
+            node.right = insert(node.right, added);
+        }
+        return update(node);
+    }
+
+    // Puts the values of node's subtree below `into.value` in into.left and the rest in into.right
+    private void split(Node<T> node, Node<T> into) {
+        if (node == null) {
+            into.left = null;
+            into.right = null;
+            return;
+        }
+        if (comparator.compare(node.value, into.value) < 0) {
+            split(node.right, into);
+            node.right = into.left;
+            into.left = update(node);
+        } else {
+            split(node.left, into);
+            node.left = into.right;
+            into.right = update(node);
+        }
+    }
+
+    private Node<T> remove(Node<T> node, T value) {
+        if (node == null) return null;
+        int c = comparator.compare(value, node.value);
+        if (c == 0) {
+            return merge(node.left, node.right);
+        }
+        if (c < 0) {
+            node.left = remove(node.left, value);
+        } else {
+            node.right = remove(node.right, value);
+        }
+        return update(node);
+    }
+
+    // Joins two subtrees where every value in a sorts before every value in b
+    private Node<T> merge(Node<T> a, Node<T> b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = merge(a.right, b);
+            return update(a);
+        }
+        b.left = merge(a, b.left);
+        return update(b);
+    }
+
+    private static <T> Node<T> update(Node<T> node) {
+        node.size = 1 + size(node.left) + size(node.right);
+        return node;
+    }
+
+    private static int size(Node<?> node) {
+        return node == null ? 0 : node.size;
+    }
+}
@@ -0,0 +1,49 @@
+//util->PasswordHasherBenchmark
+package util;
+
+import java.util.Arrays;
+
+/**
+ * Measures PasswordHasher.verify latency for several iteration counts, to pick
+ * a cost that keeps login inside the latency budget on the target machine.
+ *
+ * Usage: java util.PasswordHasherBenchmark [iterations...]
+ */
+public class PasswordHasherBenchmark {
+    private static final int[] DEFAULT_COSTS = {10_000, 60_000, 120_000, 310_000, 600_000};
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 30;
+
+    public static void main(String[] args) {
+        int[] costs = args.length == 0 ? DEFAULT_COSTS : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+
+        System.out.printf("%-12s %10s %10s %10s %10s%n", "iterations", "avg ms", "p50 ms", "p99 ms", "max ms");
+        for (int cost : costs) {
+            PasswordHasher hasher = new PasswordHasher(cost);
+            String stored = hasher.hash("correct horse battery staple");
+
+            for (int i = 0; i < WARMUP_ROUNDS; i++) {
+                hasher.verify("correct horse battery staple", stored);
+            }
+
+            long[] samples = new long[MEASURED_ROUNDS];
+            boolean sink = true;
+            for (int i = 0; i < MEASURED_ROUNDS; i++) {
+                long start = System.nanoTime();
+                sink &= hasher.verify("correct horse battery staple", stored);
+                samples[i] = System.nanoTime() - start;
+            }
+            if (!sink) {
+                throw new IllegalStateException("verify failed for cost " + cost);
+            }
+
+            Arrays.sort(samples);
+            double avg = Arrays.stream(samples).average().orElse(0);
+            System.out.printf("%-12d %10.1f %10.1f %10.1f %10.1f%n", cost,
+                    avg / 1e6,
+                    samples[samples.length / 2] / 1e6,
+                    samples[(int) Math.ceil(samples.length * 0.99) - 1] / 1e6,
+                    samples[samples.length - 1] / 1e6);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package models;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A user's progress as counters kept per device, so progress made on different
+ * devices can be merged without losing any of it.
+ *
+ * Each device only ever raises its own entries; a counter's value is the sum of its
+ * entries. Merging two copies keeps the larger value of every entry, so merges can
+ * happen in any order and any number of times. XP and completed tasks only grow;
+ * coins are the coins earned minus the coins spent.
+ */
+public class ProgressCounters {
+    public static final String XP = "xp";
+    public static final String TASKS = "tasks";
+    public static final String COINS_EARNED = "coinsEarned";
+    public static final String COINS_SPENT = "coinsSpent";
+
+    private static final String[] NAMES = {XP, TASKS, COINS_EARNED, COINS_SPENT};
+
+    // Counter name -> device id -> count
+    private final Map<String, Map<String, Long>> counters = new TreeMap<>();
+
+    // Total XP ever earned (all levels)
+    public long getXp() {
+        return total(XP);
+    }
+
+    public long getCompletedTasks() {
+        return total(TASKS);
+    }
+
+    public long getCoins() {
+        return total(COINS_EARNED) - total(COINS_SPENT);
+    }
+
+    public long get(String counter, String device) {
+        Map<String, Long> entries = counters.get(counter);
+        Long value = entries == null ? null : entries.get(device);
+        return value == null ? 0 : value;
+    }
+
+    /**
+     * Count progress made on a device.
+     * @param counter one of XP, TASKS, COINS_EARNED, COINS_SPENT
+     * @param device the device it was made on
+     * @param amount how much to add; nothing happens unless it is positive
+     */
+    public void add(String counter, String device, long amount) {
+        if (amount <= 0) return;
+        counters.computeIfAbsent(counter, k -> new TreeMap<>()).merge(device, amount, Long::sum);
+    }
+
+    /**
+     * Take in everything another copy knows about.
+     * @param other counters from another device or from the server
+     * @return true if anything here changed
+     */
+    public boolean merge(ProgressCounters other) {
+        boolean changed = false;
+        for (Map.Entry<String, Map<String, Long>> counter : other.counters.entrySet()) {
+            for (Map.Entry<String, Long> entry : counter.getValue().entrySet()) {
+                if (entry.getValue() > get(counter.getKey(), entry.getKey())) {
+                    counters.computeIfAbsent(counter.getKey(), k -> new TreeMap<>()).put(entry.getKey(), entry.getValue());
+                    changed = true;
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * @return the entries that are higher here than in other, keyed "counter/device"
+     */
+    public Map<String, Long> newerThan(ProgressCounters other) {
+        Map<String, Long> newer = new HashMap<>();
+        for (Map.Entry<String, Map<String, Long>> counter : counters.entrySet()) {
+            for (Map.Entry<String, Long> entry : counter.getValue().entrySet()) {
+                if (entry.getValue() > other.get(counter.getKey(), entry.getKey())) {
+                    newer.put(counter.getKey() + "/" + entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        return newer;
+    }
+
+    /**
+     * Read counters stored as nested maps ({"xp": {"device": 120}, ...}), as they come
+     * back from the database. Anything that isn't a known counter or a number is ignored.
+     */
+    public static ProgressCounters fromMap(Map<?, ?> value) {
+        ProgressCounters progress = new ProgressCounters();
+        if (value == null) return progress;
+        for (String name : NAMES) {
+            if (!(value.get(name) instanceof Map)) continue;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value.get(name)).entrySet()) {
+                if (entry.getValue() instanceof Number) {
+                    progress.add(name, String.valueOf(entry.getKey()), ((Number) entry.getValue()).longValue());
+                }
+            }
+        }
+        return progress;
+    }
+
+    /**
+     * @return the counters as nested maps, the shape fromMap reads
+     */
+    public Map<String, Object> toMap() {
+        Map<String, Object> value = new HashMap<>();
+        for (Map.Entry<String, Map<String, Long>> counter : counters.entrySet()) {
+            value.put(counter.getKey(), new HashMap<>(counter.getValue()));
+        }
+        return value;
+    }
+
+    private long total(String counter) {
+        Map<String, Long> entries = counters.get(counter);
+        if (entries == null) return 0;
+        long sum = 0;
+        for (long value : entries.values()) {
+            sum += value;
+        }
+        return sum;
+    }
+}
@@ -3,6 +3,7 @@ package ui;
 import models.Task;
 import models.User;
 import util.ColorPalette;
+import util.DataManager;
 import util.FontManager;
 
 import javax.swing.*;
@@ -19,6 +20,8 @@ import java.util.stream.Collectors;
 
 public class ProgressScreen extends JFrame {
     private final User user;
+    // Archived and current tasks, read once when the screen opens
+    private List<Task> taskHistory = new ArrayList<>();
     private final FontManager fontManager = FontManager.getInstance();
 
     public ProgressScreen() {
@@ -29,6 +32,7 @@ public class ProgressScreen extends JFrame {
             dispose();
             return;
         }
+        this.taskHistory = DataManager.getTaskHistory(user);
 
         setTitle("Progress Statistics");
         setSize(900, 700);
@@ -227,12 +231,12 @@ public class ProgressScreen extends JFrame {
 
         // Create column names and table model for tasks
         String[] columnNames = {"Description", "Difficulty", "XP", "Coins", "Status", "Completion Date"};
-        Object[][] data = new Object[user.getTasks().size()][6];
+        Object[][] data = new Object[taskHistory.size()][6];
 
         // Fill data
         DateTimeFormatter formatter = DateTimeFormatter.ofPattern("MMM d, yyyy");
         int i = 0;
-        for (Task task : user.getTasks()) {
+        for (Task task : taskHistory) {
             data[i][0] = task.getDescription();
             data[i][1] = task.getDifficulty();
             data[i][2] = task.getXpReward();
@@ -317,7 +321,7 @@ public class ProgressScreen extends JFrame {
         ));
 
         // Get the count of completed tasks
-        long completedTasks = user.getTasks().stream().filter(Task::isCompleted).count();
+        long completedTasks = taskHistory.stream().filter(Task::isCompleted).count();
 
         // Define achievement milestones
         String[][] achievements = {
@@ -470,7 +474,7 @@ public class ProgressScreen extends JFrame {
             difficultyCount.put(diff, 0);
         }
 
-        for (Task task : user.getTasks()) {
+        for (Task task : taskHistory) {
             if (task.isCompleted()) {
                 Task.Difficulty diff = task.getDifficulty();
                 difficultyCount.put(diff, difficultyCount.get(diff) + 1);
@@ -545,7 +549,7 @@ public class ProgressScreen extends JFrame {
             coinsByDifficulty.put(diff, 0);
         }
 
-        for (Task task : user.getTasks()) {
+        for (Task task : taskHistory) {
             if (task.isCompleted()) {
                 Task.Difficulty diff = task.getDifficulty();
                 xpByDifficulty.put(diff, xpByDifficulty.get(diff) + task.getXpReward());
@@ -659,7 +663,7 @@ public class ProgressScreen extends JFrame {
         int totalTasksCompleted = 0;
         int totalHardTasksCompleted = 0;
 
-        for (Task task : user.getTasks()) {
+        for (Task task : taskHistory) {
             if (task.isCompleted()) {
                 totalTasksCompleted++;
                 avgXpPerTask += task.getXpReward();
@@ -688,9 +692,9 @@ public class ProgressScreen extends JFrame {
         String[] statValues = {
             String.format("%.1f", avgXpPerTask),
             String.format("%.1f", avgCoinsPerTask),
-            totalTasksCompleted + "/" + user.getTasks().size() + " (" +
-                (user.getTasks().size() > 0 ?
-                    String.format("%.1f%%", (totalTasksCompleted * 100.0 / user.getTasks().size())) :
+            totalTasksCompleted + "/" + taskHistory.size() + " (" +
+                (taskHistory.size() > 0 ?
+                    String.format("%.1f%%", (totalTasksCompleted * 100.0 / taskHistory.size())) :
                     "0%") + ")",
             totalHardTasksCompleted + " tasks",
             estimateTimeToNextLevel() + " tasks"
@@ -727,7 +731,7 @@ public class ProgressScreen extends JFrame {
         double avgXpPerTask = 0;
         int completedTasks = 0;
 
-        for (Task task : user.getTasks()) {
+        for (Task task : taskHistory) {
             if (task.isCompleted()) {
                 avgXpPerTask += task.getXpReward();
                 completedTasks++;
@@ -0,0 +1,276 @@
+//util->ProgressSync
+package util;
+
+import com.google.gson.JsonParseException;
+import models.ProgressCounters;
+import models.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Keeps a user's level, xp, completed tasks and coins in step across devices.
+ *
+ * Progress is kept as ProgressCounters in data/<user>.progress and in Firebase at
+ * progress/<user>/<counter>/<device>. record() counts the progress the User object
+ * was given since the last call (addXP, addCoins, spendCoins, incrementCompletedTasksCounter)
+ * as this device's and uploads only this device's entries (through SyncOutbox). Only
+ * those increments count, never the difference between totals, so an out-of-date copy
+ * of the user can't be mistaken for coins spent or progress lost. merge() takes in the server's counters and sets the
+ * user's stats from the combined totals, so two devices used at the same time both
+ * keep their progress instead of the last upload winning.
+ *
+ * Progress from before the counters existed goes to a shared "legacy" entry, which
+ * merges like any other entry (the larger value wins).
+ */
+public class ProgressSync {
+    public static final String PATH = "progress";
+
+    private static final String DATA_DIR = "data/";
+    private static final String DEVICE_FILE = DATA_DIR + "device.id";
+    private static final String LEGACY = "legacy";
+
+    private static String deviceId;
+    private static final Map<String, ProgressCounters> counters = new HashMap<>();
+    // Progress taken from users by record() but not yet added to the counters. Guarded by itself,
+    // not the class lock, so record() never waits for counters being written
+    private static final Deque<Progress> unapplied = new ArrayDeque<>();
+
+    // A user's unrecorded progress, and what they had before it (for a user's first counters)
+    private static final class Progress {
+        final String username;
+        final long xp;
+        final long tasks;
+        final long coinsEarned;
+        final long coinsSpent;
+        final long previousXp;
+        final long previousTasks;
+        final long previousCoins;
+
+        Progress(User user) {
+            username = user.getUsername();
+            xp = user.getUnrecordedXp();
+            tasks = user.getUnrecordedTasks();
+            coinsEarned = user.getUnrecordedCoinsEarned();
+            coinsSpent = user.getUnrecordedCoinsSpent();
+            previousXp = totalXp(user) - xp;
+            previousTasks = user.getTotalCompletedTasks() - tasks;
+            previousCoins = user.getCoins() - coinsEarned + coinsSpent;
+        }
+    }
+
+    /**
+     * Take the user's unrecorded progress (see User.hasUnrecordedProgress) to be counted
+     * as this device's. Only the in-memory hand-off happens here, since DataManager.saveUser
+     * calls this on the Swing thread; the counters file and the upload are done on the sync
+     * pool. Guests (users without an account here) are never synced.
+     * @param user the local user; its unrecorded progress is cleared
+     */
+    public static void record(User user) {
+        if (!user.hasUnrecordedProgress()) return;
+        if (!DataManager.userExists(user.getUsername())) {
+            user.clearUnrecordedProgress();
+            return;
+        }
+        synchronized (unapplied) {
+            unapplied.add(new Progress(user));
+        }
+        user.clearUnrecordedProgress();
+        // If the pool is full the progress stays queued for the next record() or merge()
+        SyncExecutor.run(ProgressSync::applyRecorded);
+    }
+
+    // Add the progress taken by record() to the counters, save them and queue the upload
+    private static synchronized void applyRecorded() {
+        String device = getDeviceId();
+        Map<String, Map<String, Long>> changedByUser = new HashMap<>();
+        List<Progress> recordedProgress;
+        synchronized (unapplied) {
+            recordedProgress = new ArrayList<>(unapplied);
+            unapplied.clear();
+        }
+        for (Progress recorded : recordedProgress) {
+            ProgressCounters progress = counters(recorded.username,
+                    recorded.previousXp, recorded.previousTasks, recorded.previousCoins);
+            Map<String, Long> changed = changedByUser.computeIfAbsent(recorded.username, u -> new HashMap<>());
+            count(progress, ProgressCounters.XP, device, recorded.xp, changed);
+            count(progress, ProgressCounters.TASKS, device, recorded.tasks, changed);
+            count(progress, ProgressCounters.COINS_EARNED, device, recorded.coinsEarned, changed);
+            count(progress, ProgressCounters.COINS_SPENT, device, recorded.coinsSpent, changed);
+        }
+
+        for (Map.Entry<String, Map<String, Long>> entry : changedByUser.entrySet()) {
+            if (!entry.getValue().isEmpty()) {
+                save(entry.getKey(), counters.get(entry.getKey()));
+                upload(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Merge counters read from progress/<user> into the local ones and set the user's
+     * stats from the result. Counters the server is missing or behind on are uploaded.
+     * @param user the local user, updated in place (not saved)
+     * @param remote the value at progress/<user>, or null if there is none
+     * @return true if the user's stats changed
+     */
+    public static synchronized boolean merge(User user, Map<?, ?> remote) {
+        // Local progress not yet counted must not be overwritten below
+        record(user);
+        applyRecorded();
+        ProgressCounters progress = counters(user.getUsername(),
+                totalXp(user), user.getTotalCompletedTasks(), user.getCoins());
+        ProgressCounters server = ProgressCounters.fromMap(remote);
+
+        Map<String, Long> missing = progress.newerThan(server);
+        if (progress.merge(server)) {
+            save(user.getUsername(), progress);
+        }
+        if (!missing.isEmpty()) {
+            upload(user.getUsername(), missing);
+        }
+        return apply(user, progress);
+    }
+
+    /**
+     * Take stats uploaded before the counters existed (leaderboard/<user>) as legacy
+     * progress, when the server has no counters for the user yet.
+     * @return true if the user's stats changed
+     */
+    public static synchronized boolean mergeLegacy(User user, long level, long xp, long completedTasks) {
+        record(user);
+        ProgressCounters legacy = new ProgressCounters();
+        legacy.add(ProgressCounters.XP, LEGACY, totalXp(user, (int) level, xp));
+        legacy.add(ProgressCounters.TASKS, LEGACY, completedTasks);
+        return merge(user, legacy.toMap());
+    }
+
+    /**
+     * @return this install's id, created on first use and kept in data/device.id
+     */
+    public static synchronized String getDeviceId() {
+        if (deviceId != null) return deviceId;
+        File file = new File(DEVICE_FILE);
+        file.getParentFile().mkdirs();
+        try {
+            if (file.exists()) {
+                String id = new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+                if (!id.isEmpty()) {
+                    deviceId = id;
+                    return deviceId;
+                }
+            }
+            deviceId = UUID.randomUUID().toString();
+            Files.write(file.toPath(), deviceId.getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Could not store device id: " + e.getMessage());
+            if (deviceId == null) deviceId = UUID.randomUUID().toString();
+        }
+        return deviceId;
+    }
+
+    /**
+     * The user's counters, read from their file the first time. Caller holds lock.
+     * The previous* values are the user's stats before any progress not yet counted,
+     * which become the legacy entry if the user has no counters on this device yet.
+     */
+    private static ProgressCounters counters(String username, long previousXp, long previousTasks, long previousCoins) {
+        ProgressCounters progress = counters.get(username);
+        if (progress != null) return progress;
+
+        File file = progressFile(username);
+        if (file.exists()) {
+            try {
+                Map<?, ?> stored = DataManager.getGson().fromJson(
+                        new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8), Map.class);
+                progress = ProgressCounters.fromMap(stored);
+            } catch (IOException | JsonParseException e) {
+                System.err.println("Could not read progress counters for " + username + ": " + e.getMessage());
+            }
+        }
+        if (progress == null) {
+            // First sync on this device: whatever the user had before the progress not yet
+            // counted is legacy progress (record() counts the rest as this device's)
+            progress = new ProgressCounters();
+            progress.add(ProgressCounters.XP, LEGACY, previousXp);
+            progress.add(ProgressCounters.TASKS, LEGACY, previousTasks);
+            progress.add(ProgressCounters.COINS_EARNED, LEGACY, previousCoins);
+            save(username, progress);
+            upload(username, progress.newerThan(new ProgressCounters()));
+        }
+        counters.put(username, progress);
+        return progress;
+    }
+
+    // Set level, xp, completed tasks and coins from the counters
+    private static boolean apply(User user, ProgressCounters progress) {
+        long xp = progress.getXp();
+        int level = 1;
+        while (xp >= user.xpNeeded(level)) {
+            xp -= user.xpNeeded(level);
+            level++;
+        }
+        int tasks = (int) Math.min(Integer.MAX_VALUE, progress.getCompletedTasks());
+        int coins = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, progress.getCoins()));
+
+        if (user.getLevel() == level && user.getXp() == xp
+                && user.getTotalCompletedTasks() == tasks && user.getCoins() == coins) {
+            return false;
+        }
+        user.setLevel(level);
+        user.setXp((int) xp);
+        user.setTotalCompletedTasks(tasks);
+        user.setCoins(coins);
+        return true;
+    }
+
+    // XP earned over all levels; level-ups subtract from xp, so add back what each level took
+    private static long totalXp(User user) {
+        return totalXp(user, user.getLevel(), user.getXp());
+    }
+
+    private static long totalXp(User user, int level, long xp) {
+        long total = Math.max(0, xp);
+        for (int l = 1; l < level; l++) {
+            total += user.xpNeeded(l);
+        }
+        return total;
+    }
+
+    private static void upload(String username, Map<String, Long> entries) {
+        if (entries.isEmpty()) return;
+        Map<String, Object> updates = new HashMap<>();
+        for (Map.Entry<String, Long> entry : entries.entrySet()) {
+            updates.put(PATH + "/" + username + "/" + entry.getKey(), entry.getValue());
+        }
+        SyncOutbox.getInstance().submit(updates);
+    }
+
+    private static void count(ProgressCounters progress, String counter, String device, long amount, Map<String, Long> changed) {
+        if (amount <= 0) return;
+        progress.add(counter, device, amount);
+        changed.put(counter + "/" + device, progress.get(counter, device));
+    }
+
+    private static void save(String username, ProgressCounters progress) {
+        try {
+            DataManager.writeAtomically(progressFile(username).toPath(),
+                    DataManager.getGson().toJson(progress.toMap()).getBytes(StandardCharsets.UTF_8));
+        } catch (IOException e) {
+            System.err.println("Could not save progress counters for " + username + ": " + e.getMessage());
+        }
+    }
+
+    private static File progressFile(String username) {
+        return new File(DATA_DIR + username + ".progress");
+    }
+}
@@ -0,0 +1,114 @@
+//firebase->RealtimeBackend
+package firebase;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * The one-shot Realtime Database operations the app uses, on plain values: maps of
+ * children, Long/Double numbers, String and Boolean, with null for a missing location.
+ * Paths are relative to the database root ("leaderboard/alice/xp").
+ *
+ * FirebaseConfig.getBackend() returns the implementation in use: the real database,
+ * or FakeRealtimeDatabase for running and load testing without it. Live listeners
+ * (room membership, the live leaderboard) still use the Firebase SDK directly.
+ */
+public interface RealtimeBackend {
+    /**
+     * Returned by a transaction update to leave the data unchanged and not commit.
+     */
+    Object ABORT = new Object();
+
+    /**
+     * Failure of a write the database refuses outright (a path it can't store, or a
+     * permission rule), so sending it again would fail the same way.
+     */
+    class RejectedException extends RuntimeException {
+        public RejectedException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    /**
+     * Read a location once.
+     * @param path root-relative path
+     * @return future with the value, or null if nothing is there; cancelling it stops waiting
+     */
+    CompletableFuture<Object> read(String path);
+
+    /**
+     * Write several locations atomically. A null value removes the location.
+     * No path may be the parent of another path in the same update.
+     * @param updates root-relative path to new value
+     * @return future that completes when the database has applied the update; it fails
+     *         with RejectedException if the database will never accept the update
+     */
+    CompletableFuture<Void> update(Map<String, Object> updates);
+
+    /**
+     * Replace a location's value based on its current value, atomically.
+     * @param path root-relative path
+     * @param update gets the current value (null if missing) and returns the new value,
+     *               or ABORT; it may be called more than once if the data changes under it
+     * @return future that resolves to true if the transaction committed, false if it aborted
+     */
+    CompletableFuture<Boolean> transaction(String path, Function<Object, Object> update);
+
+    /**
+     * For background writers that shouldn't be the ones to bring the database up.
+     * @return future that completes once something else has started the database,
+     *         so using it from then on costs no startup
+     */
+    default CompletableFuture<Void> started() {
+        return CompletableFuture.completedFuture(null);
+    }
+
+    /**
+     * @return a value's children by key, or an empty map if it has none
+     */
+    @SuppressWarnings("unchecked")
+    static Map<String, Object> children(Object value) {
+        if (value instanceof Map) {
+            return (Map<String, Object>) value;
+        }
+        if (value instanceof List) {
+            // Firebase returns children with keys 0..n as a list
+            Map<String, Object> map = new HashMap<>();
+            List<Object> list = (List<Object>) value;
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i) != null) {
+                    map.put(String.valueOf(i), list.get(i));
+                }
+            }
+            return map;
+        }
+        return Collections.emptyMap();
+    }
+
+    /**
+     * @return the first path with an empty key or a key the database can't store
+     *         (. # $ [ ] or control characters), or null if every path is valid
+     */
+    static String invalidPath(Iterable<String> paths) {
+        for (String path : paths) {
+            String trimmed = path.replaceAll("^/+|/+$", "");
+            if (trimmed.isEmpty() || trimmed.contains("//")) return path;
+            for (int i = 0; i < trimmed.length(); i++) {
+                char c = trimmed.charAt(i);
+                if (".#$[]".indexOf(c) >= 0 || c < 0x20 || c == 0x7F) return path;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return a numeric value as a Long, or null if it isn't a number
+     */
+    static Long asLong(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : null;
+    }
+}
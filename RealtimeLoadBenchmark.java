@@ -0,0 +1,170 @@
+//util->RealtimeLoadBenchmark
+package util;
+
+import firebase.FakeRealtimeDatabase;
+import firebase.FirebaseConfig;
+import firebase.FirebaseRoomManager;
+import models.User;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Simulates many clients using the room and leaderboard code at once, against
+ * FakeRealtimeDatabase, so scaling can be measured without the real database.
+ * Half the clients create a room, the other half join one, every client uploads
+ * its stats several times, and the creators run the login cleanup.
+ * Reports p50/p99/max latency and throughput per operation.
+ *
+ * Usage: java util.RealtimeLoadBenchmark [clients] [latencyMs] [failureRate]
+ */
+public class RealtimeLoadBenchmark {
+    private static final int DEFAULT_CLIENTS = 200;
+    private static final long DEFAULT_LATENCY_MS = 20;
+    private static final double DEFAULT_FAILURE_RATE = 0.0;
+    private static final int UPLOAD_ROUNDS = 5;
+
+    // Latencies and failures of one kind of operation
+    private static final class Samples {
+        final String name;
+        final List<Long> nanos = new ArrayList<>();
+        final AtomicInteger failed = new AtomicInteger();
+        long wallNanos;
+
+        Samples(String name) {
+            this.name = name;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int clients = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_CLIENTS;
+        long latencyMs = args.length > 1 ? Long.parseLong(args[1]) : DEFAULT_LATENCY_MS;
+        double failureRate = args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_FAILURE_RATE;
+
+        FakeRealtimeDatabase database = new FakeRealtimeDatabase(latencyMs, failureRate);
+        FirebaseConfig.setBackend(database);
+
+        int creators = Math.max(1, clients / 2);
+        int joiners = clients - creators;
+        User[] users = new User[clients];
+        SyncOutbox[] outboxes = new SyncOutbox[clients];
+        LeaderboardUploader[] uploaders = new LeaderboardUploader[clients];
+        // Each client has its own uploader and outbox, in a temporary directory
+        Path outboxDir = Files.createTempDirectory("load-outbox");
+        for (int i = 0; i < clients; i++) {
+            users[i] = new User("load-user-" + i);
+            outboxes[i] = new SyncOutbox(outboxDir.resolve("client-" + i + ".log").toFile());
+            uploaders[i] = new LeaderboardUploader(0, outboxes[i]);
+        }
+        ExecutorService clientThreads = Executors.newFixedThreadPool(clients, r -> {
+            Thread t = new Thread(r, "load-client");
+            t.setDaemon(true);
+            return t;
+        });
+
+        List<Samples> results = new ArrayList<>();
+        PrintStream out = System.out;
+        // The room and upload code logs every operation; keep the report readable
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            results.add(phase(new Samples("create room"), creators,
+                    i -> FirebaseRoomManager.createRoomAsync("LOAD" + i, 4, users[i])));
+
+            results.add(phase(new Samples("join room"), joiners,
+                    i -> FirebaseRoomManager.joinRoomAsync("LOAD" + (i % creators), users[creators + i], true)
+                            .thenApply(code -> code == 0)));
+
+            Samples uploads = new Samples("upload stats");
+            for (int round = 0; round < UPLOAD_ROUNDS; round++) {
+                phase(uploads, clients, i -> CompletableFuture.supplyAsync(() -> {
+                    users[i].setXp(users[i].getXp() + 10);
+                    uploaders[i].upload(users[i]);
+                    return uploaders[i].flush(5, TimeUnit.SECONDS);
+                }, clientThreads));
+            }
+            results.add(uploads);
+
+            results.add(phase(new Samples("login cleanup"), creators,
+                    i -> FirebaseRoomManager.deleteUserRoomsAsync(users[i].getUsername())));
+        } finally {
+            System.setOut(out);
+            clientThreads.shutdown();
+            File[] files = outboxDir.toFile().listFiles();
+            for (File file : files != null ? files : new File[0]) {
+                file.delete();
+            }
+            Files.deleteIfExists(outboxDir);
+        }
+
+        System.out.printf("%d clients, %d ms latency, %.1f%% failures%n", clients, latencyMs, failureRate * 100);
+        System.out.printf("%-14s %8s %8s %10s %10s %10s %10s%n", "operation", "ops", "failed", "p50 ms", "p99 ms", "max ms", "ops/s");
+        for (Samples samples : results) {
+            long[] sorted = samples.nanos.stream().mapToLong(Long::longValue).sorted().toArray();
+            if (sorted.length == 0) continue;
+            System.out.printf("%-14s %8d %8d %10.1f %10.1f %10.1f %10.0f%n", samples.name,
+                    sorted.length,
+                    samples.failed.get(),
+                    sorted[sorted.length / 2] / 1e6,
+                    sorted[(int) Math.ceil(sorted.length * 0.99) - 1] / 1e6,
+                    sorted[sorted.length - 1] / 1e6,
+                    sorted.length / (samples.wallNanos / 1e9));
+        }
+        System.out.printf("database: %d reads, %d updates, %d transactions, %d simulated failures%n",
+                database.getReads(), database.getUpdates(), database.getTransactions(), database.getFailures());
+        long retries = 0;
+        long replayMaxMs = 0;
+        for (SyncOutbox outbox : outboxes) {
+            retries += outbox.getFailedAttempts();
+            replayMaxMs = Math.max(replayMaxMs, outbox.getMaxReplayLatencyMs());
+        }
+        System.out.printf("outbox: %d retried sends, %d ms longest wait for delivery%n", retries, replayMaxMs);
+        long fieldsWritten = 0;
+        long fieldsSkipped = 0;
+        long bytesAvoided = 0;
+        for (LeaderboardUploader uploader : uploaders) {
+            fieldsWritten += uploader.getFieldsWritten();
+            fieldsSkipped += uploader.getFieldsSkipped();
+            bytesAvoided += uploader.getBytesAvoided();
+        }
+        System.out.printf("leaderboard: %d fields written, %d unchanged fields skipped (~%d bytes)%n",
+                fieldsWritten, fieldsSkipped, bytesAvoided);
+    }
+
+    /**
+     * Start count operations at once and wait for all of them.
+     * An operation fails if its future fails or resolves to false.
+     */
+    private static Samples phase(Samples samples, int count, IntFunction<CompletableFuture<Boolean>> operation) {
+        long phaseStart = System.nanoTime();
+        CompletableFuture<?>[] running = new CompletableFuture<?>[count];
+        for (int i = 0; i < count; i++) {
+            long start = System.nanoTime();
+            running[i] = operation.apply(i).handle((ok, error) -> {
+                long elapsed = System.nanoTime() - start;
+                synchronized (samples) {
+                    samples.nanos.add(elapsed);
+                }
+                if (error != null || !Boolean.TRUE.equals(ok)) {
+                    samples.failed.incrementAndGet();
+                }
+                return null;
+            });
+        }
+        CompletableFuture.allOf(running).join();
+        samples.wallNanos += System.nanoTime() - phaseStart;
+        return samples;
+    }
+}
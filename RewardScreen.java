@@ -448,7 +448,7 @@ public class RewardScreen extends JFrame {
 
     private void redeemReward(Reward reward) {
         if (user.getCoins() >= reward.getCost()) {
-            user.setCoins(user.getCoins() - reward.getCost());
+            user.spendCoins(reward.getCost());
             coinsLabel.setText("💰 " + user.getCoins() + " COINS");
 
             // Create a custom panel for a more visible notification
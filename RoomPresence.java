@@ -0,0 +1,162 @@
+package firebase;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Keeps a room's member list honest when clients crash or lose their connection.
+ *
+ * While we are a member, Firebase holds onDisconnect removals for our membership and
+ * index entry, and we write a lastSeen timestamp every HEARTBEAT_SECONDS. Every member
+ * does the same, so each client also notes when it last heard from the others (by the
+ * local clock, so clock skew between machines doesn't matter) and removes members that
+ * have been silent for STALE_MS in a single multi-path update. While this client is
+ * offline it hears nobody, so it doesn't sweep then, and it starts every member's
+ * silence over when the connection comes back.
+ *
+ * Driven by the room listener: call heard/forget for membership events, then stop when
+ * leaving the room.
+ */
+public class RoomPresence {
+    private static final long HEARTBEAT_SECONDS = 30;
+    private static final long SWEEP_SECONDS = 60;
+    private static final long STALE_MS = TimeUnit.SECONDS.toMillis(HEARTBEAT_SECONDS * 3);
+
+    private static final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "room-presence");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private final String roomId;
+    private final String username;
+    private final Consumer<Boolean> connectionListener = this::connectionChanged;
+
+    // Everything below is guarded by this
+    private final Map<String, Long> lastHeard = new HashMap<>();
+    private ScheduledFuture<?> heartbeat;
+    private ScheduledFuture<?> sweeper;
+    private boolean stopped = false;
+    private long heartbeatsSent = 0;
+    private long membersExpired = 0;
+
+    public RoomPresence(String roomId, String username) {
+        this.roomId = roomId;
+        this.username = username;
+    }
+
+    /**
+     * A member was added or their data changed (which includes their heartbeat).
+     * @param member the member's username
+     */
+    public synchronized void heard(String member) {
+        if (stopped) return;
+        lastHeard.put(member, System.currentTimeMillis());
+
+        // Only announce ourselves once we are really in the room, so a heartbeat
+        // never creates a membership on its own
+        if (member.equals(username) && heartbeat == null) {
+            FirebaseRoomManager.removeOnDisconnect(roomId, username);
+            heartbeat = timer.scheduleAtFixedRate(this::beat, HEARTBEAT_SECONDS, HEARTBEAT_SECONDS, TimeUnit.SECONDS);
+        }
+        if (sweeper == null) {
+            FirebaseConfig.addConnectionListener(connectionListener);
+            sweeper = timer.scheduleAtFixedRate(this::sweep, SWEEP_SECONDS, SWEEP_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * A member left the room.
+     * @param member the member's username
+     */
+    public synchronized void forget(String member) {
+        lastHeard.remove(member);
+        if (member.equals(username)) {
+            stopHeartbeat();
+            FirebaseRoomManager.cancelOnDisconnect(roomId, username);
+        }
+    }
+
+    /**
+     * Stop heartbeats and sweeping. Call before leaving the room, so a late
+     * heartbeat can't write to a membership that was just removed.
+     */
+    public synchronized void stop() {
+        stopped = true;
+        stopHeartbeat();
+        if (sweeper != null) {
+            sweeper.cancel(false);
+            sweeper = null;
+        }
+        FirebaseConfig.removeConnectionListener(connectionListener);
+        lastHeard.clear();
+        FirebaseRoomManager.cancelOnDisconnect(roomId, username);
+    }
+
+    private void stopHeartbeat() {
+        // Caller holds lock
+        if (heartbeat != null) {
+            heartbeat.cancel(false);
+            heartbeat = null;
+        }
+    }
+
+    private void beat() {
+        synchronized (this) {
+            if (stopped || heartbeat == null) return;
+            heartbeatsSent++;
+        }
+        FirebaseRoomManager.heartbeat(roomId, username).thenAccept(written -> {
+            if (!written) {
+                // Someone's sweep removed us; heard() starts beating again if we rejoin
+                synchronized (this) {
+                    stopHeartbeat();
+                }
+            }
+        });
+    }
+
+    private synchronized void connectionChanged(boolean connected) {
+        if (!connected || stopped) return;
+        // We heard nothing while offline, which says nothing about the other members
+        long now = System.currentTimeMillis();
+        lastHeard.replaceAll((member, heard) -> now);
+    }
+
+    private void sweep() {
+        List<String> stale = new ArrayList<>();
+        synchronized (this) {
+            if (stopped || !FirebaseConfig.isConnected()) return;
+            long cutoff = System.currentTimeMillis() - STALE_MS;
+            for (Map.Entry<String, Long> entry : lastHeard.entrySet()) {
+                if (entry.getValue() < cutoff && !entry.getKey().equals(username)) {
+                    stale.add(entry.getKey());
+                }
+            }
+            if (stale.isEmpty()) return;
+            lastHeard.keySet().removeAll(stale);
+            membersExpired += stale.size();
+        }
+        System.out.println("Removing " + stale.size() + " silent member(s) from room " + roomId + ": " + String.join(", ", stale));
+        FirebaseRoomManager.removeMembersAsync(roomId, stale).exceptionally(e -> {
+            System.err.println("Error removing silent room members: " + e.getMessage());
+            return null;
+        });
+    }
+
+    public synchronized long getHeartbeatsSent() {
+        return heartbeatsSent;
+    }
+
+    // Members removed by this client's sweeper
+    public synchronized long getMembersExpired() {
+        return membersExpired;
+    }
+}
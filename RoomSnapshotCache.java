@@ -0,0 +1,108 @@
+//firebase->RoomSnapshotCache
+package firebase;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * What this client currently knows about the rooms it is listening to, kept up to
+ * date by the listeners from FirebaseRoomManager.listenForRoomChanges. While a room
+ * has a listener attached and its first snapshot has arrived, reading its members
+ * or checking that it exists is answered from here instead of the database.
+ * A room's entry is dropped when its last listener is removed.
+ */
+public class RoomSnapshotCache {
+    private static final class Room {
+        int listeners;
+        boolean membersLoaded;
+        Boolean exists; // null until the first creator event
+        final Map<String, Object> members = new HashMap<>();
+    }
+
+    // Everything below is guarded by the class lock
+    private static final Map<String, Room> rooms = new HashMap<>();
+    private static long hits = 0;
+    private static long misses = 0;
+
+    static synchronized void open(String roomId) {
+        rooms.computeIfAbsent(roomId, k -> new Room()).listeners++;
+    }
+
+    static synchronized void close(String roomId) {
+        Room room = rooms.get(roomId);
+        if (room != null && --room.listeners <= 0) {
+            rooms.remove(roomId);
+        }
+    }
+
+    /**
+     * The full member list from a single-value read, taken after the child listener
+     * was attached; from here on the child events keep it current.
+     */
+    static synchronized void membersLoaded(String roomId, Map<String, Object> members) {
+        Room room = rooms.get(roomId);
+        if (room == null) return;
+        room.members.clear();
+        room.members.putAll(members);
+        room.membersLoaded = true;
+    }
+
+    static synchronized void memberChanged(String roomId, String member, Object value) {
+        Room room = rooms.get(roomId);
+        if (room != null) room.members.put(member, value);
+    }
+
+    static synchronized void memberRemoved(String roomId, String member) {
+        Room room = rooms.get(roomId);
+        if (room != null) room.members.remove(member);
+    }
+
+    static synchronized void existsChanged(String roomId, boolean exists) {
+        Room room = rooms.get(roomId);
+        if (room != null) room.exists = exists;
+    }
+
+    // A cancelled listener stops delivering changes, so stop trusting what it delivered
+    static synchronized void invalidate(String roomId) {
+        Room room = rooms.get(roomId);
+        if (room == null) return;
+        room.membersLoaded = false;
+        room.exists = null;
+        room.members.clear();
+    }
+
+    /**
+     * @return a copy of the room's members by key, or null if they aren't known here
+     */
+    static synchronized Map<String, Object> members(String roomId) {
+        Room room = rooms.get(roomId);
+        if (room == null || !room.membersLoaded) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return new HashMap<>(room.members);
+    }
+
+    /**
+     * @return whether the room exists, or null if that isn't known here
+     */
+    static synchronized Boolean exists(String roomId) {
+        Room room = rooms.get(roomId);
+        if (room == null || room.exists == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return room.exists;
+    }
+
+    // Reads answered from the cache, and reads that had to go to the database
+    public static synchronized long getHits() {
+        return hits;
+    }
+
+    public static synchronized long getMisses() {
+        return misses;
+    }
+}
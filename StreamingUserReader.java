@@ -0,0 +1,120 @@
+//util->StreamingUserReader
+package util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
+import com.google.gson.Strictness;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import models.Task;
+import models.User;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+
+/**
+ * Reads a JSON user file token by token. Tasks are built one at a time as the
+ * tasks array streams past, so a user with a huge history never exists as a
+ * JSON tree or a single String in memory. Everything else (stats, rewards,
+ * multiplayer tracking) is small and is still mapped by Gson.
+ */
+public class StreamingUserReader {
+    private StreamingUserReader() {
+    }
+
+    /**
+     * @param gson the Gson used to write user files
+     * @param in the user file, ideally buffered
+     * @return the user, or null if the document is empty
+     * @throws IOException if the file isn't a valid user
+     */
+    public static User read(Gson gson, Reader in) throws IOException {
+        JsonReader reader = new JsonReader(in);
+        reader.setStrictness(Strictness.LENIENT); // Match Gson.fromJson
+        if (reader.peek() == JsonToken.END_DOCUMENT) {
+            return null;
+        }
+
+        JsonObject header = new JsonObject();
+        ArrayList<Task> tasks = new ArrayList<>();
+        try {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                String name = reader.nextName();
+                if (name.equals("tasks") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        tasks.add(readTask(reader));
+                    }
+                    reader.endArray();
+                } else {
+                    header.add(name, JsonParser.parseReader(reader));
+                }
+            }
+            reader.endObject();
+
+            // Gson skips field initializers, so give it an empty list to fill in
+            header.add("tasks", new JsonArray());
+            User user = gson.fromJson(header, User.class);
+            if (user == null) return null;
+            user.getTasks().addAll(tasks);
+            return user;
+        } catch (IllegalStateException | NumberFormatException | DateTimeParseException | JsonParseException e) {
+            throw new IOException("Malformed user file: " + e.getMessage(), e);
+        }
+    }
+
+    private static Task readTask(JsonReader reader) throws IOException {
+        if (reader.peek() == JsonToken.NULL) {
+            reader.nextNull();
+            return new Task();
+        }
+
+        String description = "";
+        int xpReward = 0;
+        int coinReward = 0;
+        Task.Difficulty difficulty = Task.Difficulty.EASY;
+        boolean completed = false;
+        LocalDate completionDate = null;
+        int timeLimit = 0;
+
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                continue;
+            }
+            switch (name) {
+                case "description": description = reader.nextString(); break;
+                case "xpReward": xpReward = reader.nextInt(); break;
+                case "coinReward": coinReward = reader.nextInt(); break;
+                case "difficulty": difficulty = parseDifficulty(reader.nextString()); break;
+                case "completed": completed = reader.nextBoolean(); break;
+                case "completionDate": completionDate = LocalDate.parse(reader.nextString()); break;
+                case "timeLimit": timeLimit = reader.nextInt(); break;
+                default: reader.skipValue();
+            }
+        }
+        reader.endObject();
+
+        Task task = new Task(description, xpReward, coinReward, difficulty, timeLimit);
+        task.setCompleted(completed);
+        task.setCompletionDate(completionDate);
+        return task;
+    }
+
+    private static Task.Difficulty parseDifficulty(String name) {
+        try {
+            return Task.Difficulty.valueOf(name);
+        } catch (IllegalArgumentException e) {
+            return Task.Difficulty.EASY;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+//util->SyncExecutor
+package util;
+
+import com.google.api.core.ApiFuture;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Shared, bounded pool for Firebase and sync work (auth checks, stat syncs),
+ * so callers don't each start their own threads. Timeouts should use
+ * CompletableFuture.orTimeout/completeOnTimeout rather than a waiting thread.
+ * When the queue is full new work is rejected and its future fails, instead of
+ * running on the caller's thread, which may be the Swing thread.
+ */
+public final class SyncExecutor {
+    private static final int THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    private static final int QUEUE_CAPACITY = 256;
+
+    private static final AtomicInteger threadCount = new AtomicInteger();
+    private static final AtomicInteger rejectedCount = new AtomicInteger();
+    private static final ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            THREADS, THREADS, 60, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(QUEUE_CAPACITY),
+            r -> {
+                Thread t = new Thread(r, "firebase-sync-" + threadCount.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            },
+            (r, pool) -> {
+                rejectedCount.incrementAndGet();
+                throw new RejectedExecutionException("Sync pool is full (" + QUEUE_CAPACITY + " queued tasks)");
+            });
+
+    private SyncExecutor() {
+    }
+
+    public static Executor executor() {
+        return executor;
+    }
+
+    /**
+     * Run a task on the pool.
+     * @return future of the task's result; fails with RejectedExecutionException if the pool is full
+     */
+    public static <T> CompletableFuture<T> supply(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    public static CompletableFuture<Void> run(Runnable task) {
+        try {
+            return CompletableFuture.runAsync(task, executor);
+        } catch (RejectedExecutionException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * Adapt a Firebase ApiFuture without blocking a thread on it.
+     * @param future the Firebase future
+     * @return a future completed with the same result or failure (unwrapped from ExecutionException)
+     */
+    public static <T> CompletableFuture<T> from(ApiFuture<T> future) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        future.addListener(() -> {
+            try {
+                result.complete(future.get());
+            } catch (ExecutionException e) {
+                result.completeExceptionally(e.getCause());
+            } catch (Exception e) {
+                result.completeExceptionally(e);
+            }
+        }, command -> {
+            try {
+                executor.execute(command);
+            } catch (RejectedExecutionException e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * @return the underlying cause of a failure passed to a CompletableFuture stage
+     */
+    public static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException)
+                && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    public static int getActiveCount() {
+        return executor.getActiveCount();
+    }
+
+    public static int getQueuedCount() {
+        return executor.getQueue().size();
+    }
+
+    // Tasks turned away because the queue was full
+    public static int getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
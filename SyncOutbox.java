@@ -0,0 +1,456 @@
+//util->SyncOutbox
+package util;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import com.google.gson.JsonParseException;
+import com.google.gson.ToNumberPolicy;
+import firebase.FirebaseConfig;
+import firebase.RealtimeBackend;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Durable queue of database writes (multi-path updates) waiting to reach Firebase.
+ *
+ * Each write is appended to data/sync_outbox.log (one JSON line, synced to disk)
+ * before it is sent, so writes made offline or right before a crash are not lost.
+ * The log is only touched by the sender thread, so submitting never waits on disk.
+ * Writes are sent in order; consecutive ones are merged into a single update when
+ * their paths allow it. A failed send is retried with exponential backoff, which
+ * is also how the queue notices that the connection is back. Nothing is sent until
+ * something online has started Firebase, so an offline session only writes the log.
+ * A write Firebase refuses outright (RealtimeBackend.RejectedException) is not
+ * retried: it is moved to sync_outbox.log.dead so it can't hold up the writes behind
+ * it. Delivered writes are recorded with an ACK line, and queued writes are replayed
+ * on the next start.
+ */
+public class SyncOutbox {
+    public static final String FILE_NAME = "sync_outbox.log";
+
+    private static final String OP_PUT = "PUT";
+    private static final String OP_ACK = "ACK";
+    private static final int MAX_BATCH = 100;
+    private static final long MIN_BACKOFF_MS = 1000;
+    private static final long MAX_BACKOFF_MS = 5 * 60_000;
+    private static final long COMPACT_BYTES = 256 * 1024;
+
+    private static final class Holder {
+        static final SyncOutbox instance = new SyncOutbox(new File("data", FILE_NAME));
+    }
+
+    // One line of the log
+    private static final class Entry {
+        String op;
+        long seq;
+        Long at;
+        Map<String, Object> updates;
+
+        Entry(String op, long seq) {
+            this.op = op;
+            this.seq = seq;
+        }
+    }
+
+    private static final class Pending {
+        final long seq;
+        final long enqueuedAt;
+        final Map<String, Object> updates;
+        final CompletableFuture<Void> delivered = new CompletableFuture<>();
+        boolean logged; // In the log (or failed to get there); guarded by the outbox
+
+        Pending(long seq, long enqueuedAt, Map<String, Object> updates) {
+            this.seq = seq;
+            this.enqueuedAt = enqueuedAt;
+            this.updates = updates;
+        }
+
+        Entry toEntry() {
+            Entry put = new Entry(OP_PUT, seq);
+            put.at = enqueuedAt;
+            put.updates = updates;
+            return put;
+        }
+    }
+
+    private final File file;
+    private final File deadFile;
+    // Keeps whole numbers as Long and null (delete) values, as the database expects
+    private final Gson gson = new GsonBuilder()
+            .serializeNulls()
+            .setObjectToNumberStrategy(ToNumberPolicy.LONG_OR_DOUBLE)
+            .create();
+    private final ScheduledExecutorService sender = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "sync-outbox");
+        t.setDaemon(true);
+        return t;
+    });
+
+    // Everything below is guarded by this
+    private final Deque<Pending> pending = new ArrayDeque<>();
+    private final List<Pending> rejected = new ArrayList<>(); // Waiting to be written to deadFile
+    private long nextSeq = 1;
+    private boolean sending = false;
+    private boolean retryScheduled = false;
+    private boolean waitingForStart = false;
+    private long backoffMs = 0;
+    private long removedThrough = 0; // Highest seq delivered or rejected
+    private long ackedThrough = 0;   // Highest seq the log says is done
+    private long isolateThrough = 0; // Writes up to here are sent one at a time
+    private long delivered = 0;
+    private long batchesSent = 0;
+    private long failedAttempts = 0;
+    private long rejectedCount = 0;
+    private long totalReplayLatencyMs = 0;
+    private long maxReplayLatencyMs = 0;
+
+    public SyncOutbox(File file) {
+        this.file = file;
+        this.deadFile = new File(file.getPath() + ".dead");
+        File parent = file.getParentFile();
+        if (parent != null && !parent.exists() && !parent.mkdirs()) {
+            System.err.println("Could not create outbox directory: " + parent);
+        }
+        synchronized (this) {
+            load();
+            if (!pending.isEmpty()) {
+                System.out.println("Replaying " + pending.size() + " queued change(s) from " + file);
+                sender.execute(this::deliver);
+            }
+        }
+    }
+
+    public static SyncOutbox getInstance() {
+        return Holder.instance;
+    }
+
+    /**
+     * Queue a multi-path update (root-relative paths, null to delete) for Firebase.
+     * Returns right away; the update is written to the log on the sender thread.
+     * @param updates the paths to write
+     * @return future that completes once Firebase has applied the update. Failed sends
+     *         are retried until they succeed; the future only fails, with
+     *         RealtimeBackend.RejectedException, if Firebase will never accept the update
+     */
+    public CompletableFuture<Void> submit(Map<String, Object> updates) {
+        String invalid = RealtimeBackend.invalidPath(updates.keySet());
+        if (invalid != null) {
+            // It could never be delivered, and would hold up everything queued after it
+            System.err.println("Not syncing a change with an invalid database path: " + invalid);
+            return CompletableFuture.failedFuture(new RealtimeBackend.RejectedException("Invalid path: " + invalid, null));
+        }
+
+        Pending entry;
+        synchronized (this) {
+            entry = new Pending(nextSeq++, System.currentTimeMillis(), new HashMap<>(updates));
+            pending.add(entry);
+        }
+        sender.execute(this::deliver);
+        return entry.delivered;
+    }
+
+    // Sender thread only: bring the log up to date, then send the next batch if nothing is in flight
+    private void deliver() {
+        writeLog();
+
+        // Don't be the one to start Firebase; queued writes stay in the log until it's up
+        CompletableFuture<Void> started = FirebaseConfig.getBackend().started();
+        if (!started.isDone()) {
+            synchronized (this) {
+                if (waitingForStart) return;
+                waitingForStart = true;
+            }
+            started.thenRun(() -> {
+                synchronized (this) {
+                    waitingForStart = false;
+                }
+                sender.execute(this::deliver);
+            });
+            return;
+        }
+
+        List<Pending> batch = new ArrayList<>();
+        Map<String, Object> merged = new HashMap<>();
+        synchronized (this) {
+            if (sending || retryScheduled || pending.isEmpty()) return;
+            for (Pending entry : pending) {
+                // Anything sent must be in the log first, or a crash could replay it out of order
+                if (!entry.logged || batch.size() >= MAX_BATCH || !merge(merged, entry.updates)) break;
+                batch.add(entry);
+                if (entry.seq <= isolateThrough) break;
+            }
+            if (batch.isEmpty()) return;
+            sending = true;
+        }
+
+        CompletableFuture<Void> sent;
+        try {
+            sent = FirebaseConfig.getBackend().update(merged);
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e); // Firebase not initialized (offline)
+        }
+        sent.whenComplete((v, error) -> finished(batch, error));
+    }
+
+    private void retry() {
+        synchronized (this) {
+            retryScheduled = false;
+        }
+        deliver();
+    }
+
+    /**
+     * Add a later update on top of the merged ones. A path replaces earlier writes below it;
+     * a path below an earlier write can't go in the same update, so the batch ends there.
+     * @return false (leaving merged unchanged) if the update has to go in a later batch
+     */
+    private static boolean merge(Map<String, Object> merged, Map<String, Object> updates) {
+        if (merged.isEmpty()) {
+            merged.putAll(updates);
+            return true;
+        }
+        for (String path : updates.keySet()) {
+            for (int slash = path.indexOf('/'); slash >= 0; slash = path.indexOf('/', slash + 1)) {
+                if (merged.containsKey(path.substring(0, slash))) return false;
+            }
+        }
+        for (Map.Entry<String, Object> update : updates.entrySet()) {
+            String prefix = update.getKey() + "/";
+            merged.keySet().removeIf(path -> path.startsWith(prefix));
+            merged.put(update.getKey(), update.getValue());
+        }
+        return true;
+    }
+
+    private void finished(List<Pending> batch, Throwable error) {
+        Throwable cause = error == null ? null : SyncExecutor.unwrap(error);
+        boolean refused = cause instanceof RealtimeBackend.RejectedException;
+        synchronized (this) {
+            sending = false;
+            if (error != null && !refused) {
+                failedAttempts++;
+                backoffMs = backoffMs == 0 ? MIN_BACKOFF_MS : Math.min(MAX_BACKOFF_MS, backoffMs * 2);
+                System.err.println("Sync failed, retrying " + pending.size() + " queued change(s) in "
+                        + backoffMs / 1000 + "s: " + cause.getMessage());
+                retryScheduled = true;
+                sender.schedule(this::retry, backoffMs, TimeUnit.MILLISECONDS);
+                return;
+            }
+
+            backoffMs = 0;
+            if (refused && batch.size() > 1) {
+                // Merged writes fail together; send them one at a time to find the one Firebase refuses
+                System.err.println("Firebase refused a batch of " + batch.size() + " change(s), sending them one at a time");
+                isolateThrough = batch.get(batch.size() - 1).seq;
+                sender.execute(this::deliver);
+                return;
+            }
+
+            if (refused) {
+                Pending entry = pending.pollFirst();
+                rejected.add(entry);
+                rejectedCount++;
+                removedThrough = entry.seq;
+                System.err.println("Firebase refused a queued change, moving it to " + deadFile + ": " + cause.getMessage());
+            } else {
+                batchesSent++;
+                long now = System.currentTimeMillis();
+                for (Pending entry : batch) {
+                    pending.pollFirst();
+                    long latency = Math.max(0, now - entry.enqueuedAt);
+                    delivered++;
+                    totalReplayLatencyMs += latency;
+                    maxReplayLatencyMs = Math.max(maxReplayLatencyMs, latency);
+                }
+                removedThrough = batch.get(batch.size() - 1).seq;
+            }
+            sender.execute(this::deliver); // Records the ACK, and sends whatever is next
+        }
+        for (Pending entry : batch) {
+            if (refused) {
+                entry.delivered.completeExceptionally(cause);
+            } else {
+                entry.delivered.complete(null);
+            }
+        }
+    }
+
+    // Sender thread only: log new writes, ACK finished ones, set aside refused ones
+    private void writeLog() {
+        List<Entry> lines = new ArrayList<>();
+        List<Entry> dead = new ArrayList<>();
+        boolean compact;
+        synchronized (this) {
+            for (Pending entry : rejected) {
+                dead.add(entry.toEntry());
+            }
+            rejected.clear();
+
+            boolean finished = removedThrough > ackedThrough;
+            compact = finished && (pending.isEmpty() || file.length() > COMPACT_BYTES);
+            if (finished && !compact) {
+                lines.add(new Entry(OP_ACK, removedThrough));
+            }
+            for (Pending entry : pending) {
+                // Compacting drops the delivered writes, so no ACK is needed
+                if (compact || !entry.logged) {
+                    lines.add(entry.toEntry());
+                }
+                entry.logged = true; // Even if writing fails below: still send it, it just won't survive a restart
+            }
+            ackedThrough = removedThrough;
+        }
+
+        try {
+            if (!dead.isEmpty()) {
+                append(deadFile, dead);
+            }
+            if (compact) {
+                compact(lines);
+            } else if (!lines.isEmpty()) {
+                append(file, lines);
+            }
+        } catch (IOException e) {
+            System.err.println("Could not write to the sync outbox: " + e.getMessage());
+        }
+    }
+
+    // Caller holds lock
+    private void load() {
+        if (!file.exists()) return;
+        boolean damaged = false;
+        try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Entry entry = parse(line);
+                if (entry == null) {
+                    // Torn write from a crash; everything before it is still good
+                    System.err.println("Ignoring damaged sync outbox tail");
+                    damaged = true;
+                    break;
+                }
+                nextSeq = Math.max(nextSeq, entry.seq + 1);
+                if (OP_PUT.equals(entry.op)) {
+                    Pending loaded = new Pending(entry.seq, entry.at != null ? entry.at : System.currentTimeMillis(), entry.updates);
+                    loaded.logged = true;
+                    pending.add(loaded);
+                } else {
+                    // ACKs cover every write up to their sequence number
+                    for (Iterator<Pending> it = pending.iterator(); it.hasNext() && it.next().seq <= entry.seq; ) {
+                        it.remove();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Could not read the sync outbox: " + e.getMessage());
+            damaged = true;
+        }
+        if (damaged || pending.isEmpty()) {
+            List<Entry> lines = new ArrayList<>();
+            for (Pending entry : pending) {
+                lines.add(entry.toEntry());
+            }
+            try {
+                compact(lines);
+            } catch (IOException e) {
+                System.err.println("Could not rewrite the sync outbox: " + e.getMessage());
+            }
+        }
+    }
+
+    private Entry parse(String line) {
+        if (line.isEmpty()) return null;
+        try {
+            Entry entry = gson.fromJson(line, Entry.class);
+            if (entry == null || entry.op == null || (OP_PUT.equals(entry.op) && entry.updates == null)) {
+                return null;
+            }
+            return entry;
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    private void append(File target, List<Entry> entries) throws IOException {
+        StringBuilder out = new StringBuilder();
+        for (Entry entry : entries) {
+            out.append(gson.toJson(entry)).append('\n');
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(out.toString().getBytes(StandardCharsets.UTF_8));
+        try (FileChannel channel = FileChannel.open(target.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+        }
+    }
+
+    // Replace the log with only the given writes (the ones still queued)
+    private void compact(List<Entry> queued) throws IOException {
+        if (queued.isEmpty()) {
+            Files.deleteIfExists(file.toPath());
+            return;
+        }
+        StringBuilder out = new StringBuilder();
+        for (Entry entry : queued) {
+            out.append(gson.toJson(entry)).append('\n');
+        }
+        DataManager.writeAtomically(file.toPath(), out.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    // Writes waiting to be delivered
+    public synchronized int getQueueDepth() {
+        return pending.size();
+    }
+
+    // How long the oldest queued write has been waiting, 0 if none
+    public synchronized long getOldestPendingAgeMs() {
+        Pending oldest = pending.peekFirst();
+        return oldest == null ? 0 : Math.max(0, System.currentTimeMillis() - oldest.enqueuedAt);
+    }
+
+    public synchronized long getDelivered() {
+        return delivered;
+    }
+
+    public synchronized long getBatchesSent() {
+        return batchesSent;
+    }
+
+    public synchronized long getFailedAttempts() {
+        return failedAttempts;
+    }
+
+    // Writes Firebase refused, moved to the .dead file instead of retried
+    public synchronized long getRejected() {
+        return rejectedCount;
+    }
+
+    // Time from queueing to delivery, including any time spent offline
+    public synchronized long getAverageReplayLatencyMs() {
+        return delivered == 0 ? 0 : totalReplayLatencyMs / delivered;
+    }
+
+    public synchronized long getMaxReplayLatencyMs() {
+        return maxReplayLatencyMs;
+    }
+}
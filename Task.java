@@ -83,6 +83,17 @@ public class Task {
         this.timeLimit = timeLimit;
     }
 
+    // Copy constructor
+    public Task(Task other) {
+        this.description = other.description;
+        this.xpReward = other.xpReward;
+        this.coinReward = other.coinReward;
+        this.difficulty = other.difficulty;
+        this.completed = other.completed;
+        this.completionDate = other.completionDate;
+        this.timeLimit = other.timeLimit;
+    }
+
     public String getDescription() {
         return description;
     }
@@ -0,0 +1,286 @@
+//util->TaskArchive
+package util;
+
+import models.Task;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+
+/**
+ * Append-only archive of a user's old completed tasks (data/<user>.archive).
+ * Records are fixed width and read through a MappedByteBuffer, so history can be
+ * scanned for statistics without keeping thousands of Task objects on the heap.
+ *
+ * Layout: 16-byte header (magic, version, record count), then 24-byte records:
+ *   description id, xpReward, coinReward, difficulty, flags, reserved,
+ *   completion epoch day, timeLimit
+ * Descriptions are stored once each in data/<user>.archive.names.
+ * The record count in the header is updated last, so a crash mid-append
+ * leaves the archive as it was before.
+ */
+public class TaskArchive {
+    private static final int MAGIC = 0x534C5441; // "SLTA"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 16;
+    private static final int RECORD_BYTES = 24;
+
+    private static final int FLAG_COMPLETED = 1;
+    private static final int FLAG_HAS_DATE = 2;
+
+    private final File file;
+    private final File namesFile;
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+    // Bytes of the names file up to the end of its last complete name
+    private long namesLength = 0;
+
+    private TaskArchive(File file, File namesFile) throws IOException {
+        this.file = file;
+        this.namesFile = namesFile;
+        loadNames();
+    }
+
+    public static TaskArchive open(String dir, String username) throws IOException {
+        return new TaskArchive(new File(dir + username + ".archive"), new File(dir + username + ".archive.names"));
+    }
+
+    public static boolean exists(String dir, String username) {
+        return new File(dir + username + ".archive").exists();
+    }
+
+    /**
+     * @return number of archived tasks, 0 if the user has no archive
+     */
+    public static long size(String dir, String username) throws IOException {
+        return size(new File(dir + username + ".archive"));
+    }
+
+    /**
+     * Remove a user's archive, e.g. when the user is replaced by one carrying its whole history.
+     * @return false if a file existed but couldn't be deleted
+     */
+    public static boolean delete(String dir, String username) {
+        boolean deleted = true;
+        for (File file : new File[]{new File(dir + username + ".archive"), new File(dir + username + ".archive.names")}) {
+            if (file.exists() && !file.delete()) deleted = false;
+        }
+        return deleted;
+    }
+
+    /**
+     * @return number of archived tasks
+     */
+    public long size() throws IOException {
+        return size(file);
+    }
+
+    private static long size(File file) throws IOException {
+        if (!file.exists()) return 0;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            return recordCount(channel, file);
+        }
+    }
+
+    /**
+     * Visit every archived task, oldest first. Each Task is built on the fly and
+     * can be dropped by the visitor, so memory use doesn't grow with history size.
+     * @param visitor receives each archived task
+     */
+    public void forEach(Consumer<Task> visitor) throws IOException {
+        if (!file.exists()) return;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long count = recordCount(channel, file);
+            if (count == 0) return;
+
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_BYTES, count * RECORD_BYTES);
+            for (long i = 0; i < count; i++) {
+                visitor.accept(readRecord(records, (int) (i * RECORD_BYTES)));
+            }
+        }
+    }
+
+    public List<Task> readAll() throws IOException {
+        List<Task> tasks = new ArrayList<>();
+        forEach(tasks::add);
+        return tasks;
+    }
+
+    /**
+     * Append tasks to the archive. Callers keep track of how much they archived
+     * (see User.getArchivedTaskCount), so nothing here tries to detect repeats.
+     * @param tasks completed tasks to archive, oldest first
+     * @return the archive's new size
+     */
+    public long append(List<Task> tasks) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (channel.size() < HEADER_BYTES) {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+                header.putInt(0, MAGIC);
+                header.putInt(4, VERSION);
+                header.putLong(8, 0);
+                header.force();
+            }
+
+            long count = recordCount(channel, file);
+            if (tasks.isEmpty()) {
+                return count;
+            }
+
+            // Descriptions first: a name without a record is harmless, the reverse isn't
+            appendNames(tasks);
+
+            MappedByteBuffer records = channel.map(FileChannel.MapMode.READ_WRITE,
+                    HEADER_BYTES + count * RECORD_BYTES, (long) tasks.size() * RECORD_BYTES);
+            for (int i = 0; i < tasks.size(); i++) {
+                writeRecord(records, i * RECORD_BYTES, tasks.get(i));
+            }
+            records.force();
+
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_BYTES);
+            header.putLong(8, count + tasks.size());
+            header.force();
+            return count + tasks.size();
+        }
+    }
+
+    private static long recordCount(FileChannel channel, File file) throws IOException {
+        if (channel.size() < HEADER_BYTES) return 0;
+        MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_BYTES);
+        if (header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+            throw new IOException("Unrecognized task archive: " + file.getPath());
+        }
+        // Never trust the header beyond what is actually on disk
+        long onDisk = (channel.size() - HEADER_BYTES) / RECORD_BYTES;
+        return Math.min(header.getLong(8), onDisk);
+    }
+
+    /**
+     * Check that the last archived tasks are these, e.g. before dropping them from a
+     * user whose saved archive count says they were archived after it was saved.
+     * @param tasks tasks expected at the end of the archive, oldest first
+     */
+    public boolean endsWith(List<Task> tasks) throws IOException {
+        if (tasks.isEmpty()) return true;
+        if (!file.exists()) return false;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            long count = recordCount(channel, file);
+            if (count < tasks.size()) return false;
+            MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY,
+                    HEADER_BYTES + (count - tasks.size()) * RECORD_BYTES, (long) tasks.size() * RECORD_BYTES);
+            for (int i = 0; i < tasks.size(); i++) {
+                if (!sameRecord(readRecord(tail, i * RECORD_BYTES), tasks.get(i))) return false;
+            }
+            return true;
+        }
+    }
+
+    private void writeRecord(MappedByteBuffer buffer, int offset, Task task) {
+        LocalDate date = task.getCompletionDate();
+        buffer.putInt(offset, nameIds.get(description(task)));
+        buffer.putInt(offset + 4, task.getXpReward());
+        buffer.putInt(offset + 8, task.getCoinReward());
+        buffer.put(offset + 12, (byte) task.getDifficulty().ordinal());
+        buffer.put(offset + 13, (byte) ((task.isCompleted() ? FLAG_COMPLETED : 0) | (date != null ? FLAG_HAS_DATE : 0)));
+        buffer.putShort(offset + 14, (short) 0);
+        buffer.putInt(offset + 16, date != null ? (int) date.toEpochDay() : 0);
+        buffer.putInt(offset + 20, task.getTimeLimit());
+    }
+
+    private Task readRecord(MappedByteBuffer buffer, int offset) {
+        int nameId = buffer.getInt(offset);
+        String description = nameId >= 0 && nameId < names.size() ? names.get(nameId) : "";
+        Task.Difficulty[] difficulties = Task.Difficulty.values();
+        int difficulty = buffer.get(offset + 12);
+        int flags = buffer.get(offset + 13);
+
+        Task task = new Task(description,
+                buffer.getInt(offset + 4),
+                buffer.getInt(offset + 8),
+                difficulty >= 0 && difficulty < difficulties.length ? difficulties[difficulty] : Task.Difficulty.EASY,
+                buffer.getInt(offset + 20));
+        task.setCompleted((flags & FLAG_COMPLETED) != 0);
+        task.setCompletionDate((flags & FLAG_HAS_DATE) != 0 ? LocalDate.ofEpochDay(buffer.getInt(offset + 16)) : null);
+        return task;
+    }
+
+    private static boolean sameRecord(Task archived, Task task) {
+        return archived.getDescription().equals(description(task))
+                && archived.getXpReward() == task.getXpReward()
+                && archived.getCoinReward() == task.getCoinReward()
+                && archived.getDifficulty() == task.getDifficulty()
+                && archived.isCompleted() == task.isCompleted()
+                && Objects.equals(archived.getCompletionDate(), task.getCompletionDate())
+                && archived.getTimeLimit() == task.getTimeLimit();
+    }
+
+    private static String description(Task task) {
+        return task.getDescription() == null ? "" : task.getDescription();
+    }
+
+    private void loadNames() throws IOException {
+        if (!namesFile.exists()) return;
+        byte[] bytes = Files.readAllBytes(namesFile.toPath());
+        ByteArrayInputStream bytesIn = new ByteArrayInputStream(bytes);
+        try (DataInputStream in = new DataInputStream(bytesIn)) {
+            while (true) {
+                String name = in.readUTF();
+                nameIds.putIfAbsent(name, names.size());
+                names.add(name);
+                namesLength = bytes.length - bytesIn.available();
+            }
+        } catch (EOFException | UTFDataFormatException e) {
+            // End of file, or a name cut short by a crash; appendNames cuts the torn tail off
+        }
+    }
+
+    private void appendNames(List<Task> tasks) throws IOException {
+        List<String> added = new ArrayList<>();
+        for (Task task : tasks) {
+            String name = description(task);
+            if (!nameIds.containsKey(name)) {
+                nameIds.put(name, names.size() + added.size());
+                added.add(name);
+            }
+        }
+        if (added.isEmpty()) return;
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            for (String name : added) {
+                out.writeUTF(name);
+            }
+        }
+
+        try (FileChannel channel = FileChannel.open(namesFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            // Drop a name torn by an earlier crash, or the names after it would be read misframed
+            channel.truncate(namesLength);
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            long position = namesLength;
+            while (buffer.hasRemaining()) {
+                position += channel.write(buffer, position);
+            }
+            channel.force(true);
+            namesLength = position;
+        }
+        names.addAll(added);
+    }
+}
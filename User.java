@@ -1,6 +1,7 @@
 package models;
 
 import java.util.ArrayList;
+import java.util.function.Supplier;
 
 public class User {
     private String username;
@@ -11,12 +12,57 @@ public class User {
     private int totalCompletedTasks = 0; // Track total completed tasks, even if deleted later
     private ArrayList<Reward> customRewards = new ArrayList<>(); // Store custom rewards
 
+    // Which stats changed since they were last uploaded (DIRTY_* bits); not saved
+    public static final int DIRTY_LEVEL = 1;
+    public static final int DIRTY_XP = 2;
+    public static final int DIRTY_COINS = 4;
+    public static final int DIRTY_TASKS = 8;
+    private transient int dirtyStats;
+
+    // Progress made through addXP, addCoins, spendCoins and incrementCompletedTasksCounter
+    // since ProgressSync last counted it; not saved, and not copied (a copy's stats are not new progress)
+    private transient long unrecordedXp;
+    private transient long unrecordedCoinsEarned;
+    private transient long unrecordedCoinsSpent;
+    private transient long unrecordedTasks;
+
+    // Set when the task history is decoded on first use instead of at load time
+    private transient volatile Supplier<ArrayList<Task>> taskLoader;
+
+    // Size of the task archive as of this save, so archived tasks are never archived twice
+    private Long archivedTaskCount;
+
     public User(String username) {
         this.username = username;
         this.xp = 0;
         this.level = 1;
         this.coins = 0;
         this.customRewards = new ArrayList<>(); // Explicitly initialize customRewards
+        this.archivedTaskCount = 0L; // A new user has nothing archived
+    }
+
+    // Copy constructor so cached users can be handed out without sharing state
+    public User(User other) {
+        this.username = other.username;
+        this.xp = other.xp;
+        this.level = other.level;
+        this.coins = other.coins;
+        this.totalCompletedTasks = other.totalCompletedTasks;
+        this.dirtyStats = other.dirtyStats;
+        Supplier<ArrayList<Task>> loader = other.taskLoader;
+        if (loader != null) {
+            this.taskLoader = loader; // Loader builds fresh Task objects, so sharing it is safe
+        } else {
+            for (Task task : other.getTasks()) {
+                this.tasks.add(new Task(task));
+            }
+        }
+        this.customRewards = new ArrayList<>(other.getCustomRewards()); // Rewards are immutable
+        this.initialXp = other.initialXp;
+        this.initialLevel = other.initialLevel;
+        this.initialCoins = other.initialCoins;
+        this.trackingInitialized = other.trackingInitialized;
+        this.archivedTaskCount = other.archivedTaskCount;
     }
 
     // Getter methods
@@ -37,9 +83,44 @@ public class User {
     }
 
     public ArrayList<Task> getTasks() {
+        if (taskLoader != null) {
+            loadTaskHistory();
+        }
         return tasks;
     }
 
+    private synchronized void loadTaskHistory() {
+        if (taskLoader != null) {
+            tasks = taskLoader.get();
+            taskLoader = null;
+        }
+    }
+
+    // Lazy task history support for the binary user snapshot format
+    public void setTaskLoader(Supplier<ArrayList<Task>> taskLoader) {
+        this.taskLoader = taskLoader;
+    }
+
+    public Supplier<ArrayList<Task>> getTaskLoader() {
+        return taskLoader;
+    }
+
+    public boolean isTaskHistoryLoaded() {
+        return taskLoader == null;
+    }
+
+    /**
+     * @return how many tasks the user's task archive held when this user was saved,
+     *         or null for users saved before this was recorded
+     */
+    public Long getArchivedTaskCount() {
+        return archivedTaskCount;
+    }
+
+    public void setArchivedTaskCount(Long archivedTaskCount) {
+        this.archivedTaskCount = archivedTaskCount;
+    }
+
     public int getTotalCompletedTasks() {
         return totalCompletedTasks;
     }
@@ -69,16 +150,22 @@ public class User {
     // Add XP and handle leveling up
     public void addXP(int amount) {
         xp += amount;
+        unrecordedXp += Math.max(0, amount);
+        dirtyStats |= DIRTY_XP;
         while (xp >= xpNeeded(level)) {
             xp -= xpNeeded(level);
             level++;
             coins += 50; // bonus on level-up
+            unrecordedCoinsEarned += 50;
+            dirtyStats |= DIRTY_LEVEL | DIRTY_COINS;
         }
     }
 
     public boolean spendCoins(int amount) {
         if (coins >= amount) {
             coins -= amount;
+            unrecordedCoinsSpent += Math.max(0, amount);
+            dirtyStats |= DIRTY_COINS;
             return true;
         } else {
             return false;
@@ -88,6 +175,12 @@ public class User {
     // Add coins safely
     public void addCoins(int amount) {
         coins += amount;
+        if (amount > 0) {
+            unrecordedCoinsEarned += amount;
+        } else {
+            unrecordedCoinsSpent -= amount;
+        }
+        dirtyStats |= DIRTY_COINS;
     }
 
     // XP required for next level
@@ -97,17 +190,64 @@ public class User {
 
     // Setter methods for synchronization
     public void setXp(int xp) {
+        if (this.xp != xp) dirtyStats |= DIRTY_XP;
         this.xp = xp;
     }
 
     public void setLevel(int level) {
+        if (this.level != level) dirtyStats |= DIRTY_LEVEL;
         this.level = level;
     }
 
     public void setCoins(int coins) {
+        if (this.coins != coins) dirtyStats |= DIRTY_COINS;
         this.coins = coins;
     }
 
+    public int getDirtyStats() {
+        return dirtyStats;
+    }
+
+    // Returns the DIRTY_* bits and clears them, for the code that uploads the stats
+    public int takeDirtyStats() {
+        int dirty = dirtyStats;
+        dirtyStats = 0;
+        return dirty;
+    }
+
+    // For loaders: the stats just read are what is stored, not a change
+    public void clearDirtyStats() {
+        dirtyStats = 0;
+    }
+
+    public long getUnrecordedXp() {
+        return unrecordedXp;
+    }
+
+    public long getUnrecordedCoinsEarned() {
+        return unrecordedCoinsEarned;
+    }
+
+    public long getUnrecordedCoinsSpent() {
+        return unrecordedCoinsSpent;
+    }
+
+    public long getUnrecordedTasks() {
+        return unrecordedTasks;
+    }
+
+    public boolean hasUnrecordedProgress() {
+        return unrecordedXp != 0 || unrecordedCoinsEarned != 0 || unrecordedCoinsSpent != 0 || unrecordedTasks != 0;
+    }
+
+    // For ProgressSync once it has counted the progress, or for callers re-applying progress already counted
+    public void clearUnrecordedProgress() {
+        unrecordedXp = 0;
+        unrecordedCoinsEarned = 0;
+        unrecordedCoinsSpent = 0;
+        unrecordedTasks = 0;
+    }
+
     // Initial state tracking for multiplayer mode
     private int initialXp = 0;
     private int initialLevel = 0;
@@ -122,6 +262,14 @@ public class User {
         System.out.println("Initialized tracking for " + username + ": XP=" + initialXp + ", Coins=" + initialCoins);
     }
 
+    // For loaders: tracking state as it was saved
+    public void restoreTracking(int initialXp, int initialLevel, int initialCoins, boolean initialized) {
+        this.initialXp = initialXp;
+        this.initialLevel = initialLevel;
+        this.initialCoins = initialCoins;
+        this.trackingInitialized = initialized;
+    }
+
     public void resetTracking() {
         this.trackingInitialized = false;
     }
@@ -154,10 +302,13 @@ public class User {
     // Method to increment the total completed tasks counter
     public void incrementCompletedTasksCounter() {
         totalCompletedTasks++;
+        unrecordedTasks++;
+        dirtyStats |= DIRTY_TASKS;
     }
 
     // Setter for totalCompletedTasks to support Firebase synchronization
     public void setTotalCompletedTasks(int totalCompletedTasks) {
+        if (this.totalCompletedTasks != totalCompletedTasks) dirtyStats |= DIRTY_TASKS;
         this.totalCompletedTasks = totalCompletedTasks;
     }
 }
\ No newline at end of file
@@ -0,0 +1,303 @@
+//util->UserBinaryFormat
+package util;
+
+import models.Reward;
+import models.Task;
+import models.User;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Compact, versioned binary snapshot of a User (data/<user>.bin).
+ *
+ * Layout (all integers are zigzag varints, strings are length-prefixed UTF-8):
+ *   magic "SLUB", version
+ *   header: username, xp, level, coins, totalCompletedTasks
+ *   session tracking (version 2): initialized (0/1), initialXp, initialLevel, initialCoins
+ *   archived task count (version 3): -1 if unknown
+ *   rewards: count, then name + cost for each
+ *   tasks section: byte length, CRC32 of the section (version 2), then
+ *     description dictionary: count, strings
+ *     tasks: count, then for each
+ *       description index, xpReward, coinReward, difficulty ordinal,
+ *       flags (1 = completed, 2 = has date), [completion epoch day], timeLimit
+ *
+ * Decoding reads the header and rewards and checks the task section; the Task
+ * objects are only built the first time the user's task list is needed.
+ */
+public class UserBinaryFormat {
+    public static final String EXTENSION = ".bin";
+
+    private static final byte[] MAGIC = {'S', 'L', 'U', 'B'};
+    private static final int VERSION = 3;
+
+    private static final int FLAG_COMPLETED = 1;
+    private static final int FLAG_HAS_DATE = 2;
+    private static final long MIN_EPOCH_DAY = LocalDate.MIN.toEpochDay();
+    private static final long MAX_EPOCH_DAY = LocalDate.MAX.toEpochDay();
+
+    public static boolean isBinary(byte[] bytes) {
+        if (bytes.length < MAGIC.length) return false;
+        for (int i = 0; i < MAGIC.length; i++) {
+            if (bytes[i] != MAGIC[i]) return false;
+        }
+        return true;
+    }
+
+    public static byte[] encode(User user) {
+        Writer out = new Writer();
+        out.bytes.write(MAGIC, 0, MAGIC.length);
+        out.writeInt(VERSION);
+
+        out.writeString(user.getUsername());
+        out.writeInt(user.getXp());
+        out.writeInt(user.getLevel());
+        out.writeInt(user.getCoins());
+        out.writeInt(user.getTotalCompletedTasks());
+
+        out.writeInt(user.isTrackingInitialized() ? 1 : 0);
+        out.writeInt(user.getInitialXp());
+        out.writeInt(user.getInitialLevel());
+        out.writeInt(user.getInitialCoins());
+        out.writeLong(user.getArchivedTaskCount() != null ? user.getArchivedTaskCount() : -1);
+
+        List<Reward> rewards = user.getCustomRewards();
+        out.writeInt(rewards.size());
+        for (Reward reward : rewards) {
+            out.writeString(reward.getName());
+            out.writeInt(reward.getCost());
+        }
+
+        byte[] tasks = encodeTasks(user.getTasks());
+        CRC32 crc = new CRC32();
+        crc.update(tasks);
+        out.writeInt(tasks.length);
+        out.writeLong(crc.getValue());
+        out.bytes.write(tasks, 0, tasks.length);
+        return out.bytes.toByteArray();
+    }
+
+    /**
+     * Decode the header and rewards now and the task list on first use.
+     * @param bytes the whole snapshot file
+     * @return the decoded user
+     * @throws IOException if the data isn't a snapshot this version understands
+     */
+    public static User decode(byte[] bytes) throws IOException {
+        if (!isBinary(bytes)) {
+            throw new IOException("Not a binary user snapshot");
+        }
+        Reader in = new Reader(bytes, MAGIC.length);
+        int version = in.readInt();
+        if (version < 1 || version > VERSION) {
+            throw new IOException("Unsupported user snapshot version: " + version);
+        }
+
+        User user = new User(in.readString());
+        user.setXp(in.readInt());
+        user.setLevel(in.readInt());
+        user.setCoins(in.readInt());
+        user.setTotalCompletedTasks(in.readInt());
+
+        if (version >= 2) {
+            boolean tracking = in.readInt() != 0;
+            user.restoreTracking(in.readInt(), in.readInt(), in.readInt(), tracking);
+        }
+        long archived = version >= 3 ? in.readLong() : -1;
+        user.setArchivedTaskCount(archived >= 0 ? archived : null);
+
+        int rewardCount = in.readInt();
+        for (int i = 0; i < rewardCount; i++) {
+            user.addCustomReward(new Reward(in.readString(), in.readInt()));
+        }
+
+        int taskLength = in.readInt();
+        long taskChecksum = version >= 2 ? in.readLong() : -1;
+        int taskOffset = in.position;
+        if (taskLength < 0 || taskOffset + taskLength > bytes.length) {
+            throw new IOException("Truncated user snapshot");
+        }
+        if (version >= 2) {
+            CRC32 crc = new CRC32();
+            crc.update(bytes, taskOffset, taskLength);
+            if (crc.getValue() != taskChecksum) {
+                throw new IOException("Damaged task history in user snapshot");
+            }
+        }
+        // A damaged history must fail the load here, not turn into an empty task list later
+        readTasks(bytes, taskOffset, taskLength, false);
+        user.setTaskLoader(() -> {
+            try {
+                return readTasks(bytes, taskOffset, taskLength, true);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e); // Already checked by decode
+            }
+        });
+        return user;
+    }
+
+    private static byte[] encodeTasks(List<Task> tasks) {
+        // Task names repeat a lot (the same study task added day after day)
+        Map<String, Integer> dictionary = new LinkedHashMap<>();
+        for (Task task : tasks) {
+            dictionary.putIfAbsent(task.getDescription() == null ? "" : task.getDescription(), dictionary.size());
+        }
+
+        Writer out = new Writer();
+        out.writeInt(dictionary.size());
+        for (String description : dictionary.keySet()) {
+            out.writeString(description);
+        }
+
+        out.writeInt(tasks.size());
+        for (Task task : tasks) {
+            out.writeInt(dictionary.get(task.getDescription() == null ? "" : task.getDescription()));
+            out.writeInt(task.getXpReward());
+            out.writeInt(task.getCoinReward());
+            out.writeInt(task.getDifficulty().ordinal());
+            LocalDate date = task.getCompletionDate();
+            out.writeInt((task.isCompleted() ? FLAG_COMPLETED : 0) | (date != null ? FLAG_HAS_DATE : 0));
+            if (date != null) {
+                out.writeLong(date.toEpochDay());
+            }
+            out.writeInt(task.getTimeLimit());
+        }
+        return out.bytes.toByteArray();
+    }
+
+    /**
+     * Read the task section.
+     * @param build false to only check the section, without creating any objects
+     * @return the tasks, or null when not building
+     * @throws IOException if the section is damaged
+     */
+    private static ArrayList<Task> readTasks(byte[] bytes, int offset, int length, boolean build) throws IOException {
+        Reader in = new Reader(bytes, offset);
+        int dictionarySize = in.readInt();
+        if (dictionarySize < 0 || dictionarySize > length) {
+            throw new IOException("Damaged task history in user snapshot");
+        }
+        String[] dictionary = new String[dictionarySize];
+        for (int i = 0; i < dictionarySize; i++) {
+            if (build) {
+                dictionary[i] = in.readString();
+            } else {
+                in.skipString();
+            }
+        }
+
+        Task.Difficulty[] difficulties = Task.Difficulty.values();
+        int count = in.readInt();
+        if (count < 0 || count > length) {
+            throw new IOException("Damaged task history in user snapshot");
+        }
+        ArrayList<Task> tasks = build ? new ArrayList<>(count) : null;
+        for (int i = 0; i < count; i++) {
+            int descriptionIndex = in.readInt();
+            int xpReward = in.readInt();
+            int coinReward = in.readInt();
+            int difficulty = in.readInt();
+            int flags = in.readInt();
+            long day = (flags & FLAG_HAS_DATE) != 0 ? in.readLong() : 0;
+            int timeLimit = in.readInt();
+            if (descriptionIndex < 0 || descriptionIndex >= dictionarySize
+                    || difficulty < 0 || difficulty >= difficulties.length
+                    || day < MIN_EPOCH_DAY || day > MAX_EPOCH_DAY) {
+                throw new IOException("Damaged task history in user snapshot");
+            }
+            if (!build) continue;
+
+            Task task = new Task(dictionary[descriptionIndex], xpReward, coinReward, difficulties[difficulty], timeLimit);
+            task.setCompleted((flags & FLAG_COMPLETED) != 0);
+            task.setCompletionDate((flags & FLAG_HAS_DATE) != 0 ? LocalDate.ofEpochDay(day) : null);
+            tasks.add(task);
+        }
+        if (in.position != offset + length) {
+            throw new IOException("Damaged task history in user snapshot");
+        }
+        return tasks;
+    }
+
+    private static class Writer {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+
+        void writeInt(int value) {
+            writeLong(value);
+        }
+
+        void writeLong(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                bytes.write((int) ((zigzag & 0x7F) | 0x80));
+                zigzag >>>= 7;
+            }
+            bytes.write((int) zigzag);
+        }
+
+        void writeString(String value) {
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeInt(utf8.length);
+            bytes.write(utf8, 0, utf8.length);
+        }
+    }
+
+    private static class Reader {
+        private final byte[] bytes;
+        private int position;
+
+        Reader(byte[] bytes, int position) {
+            this.bytes = bytes;
+            this.position = position;
+        }
+
+        int readInt() throws IOException {
+            long value = readLong();
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+                throw new IOException("Integer out of range in user snapshot");
+            }
+            return (int) value;
+        }
+
+        long readLong() throws IOException {
+            long zigzag = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                if (position >= bytes.length) {
+                    throw new IOException("Truncated user snapshot");
+                }
+                byte b = bytes[position++];
+                zigzag |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return (zigzag >>> 1) ^ -(zigzag & 1);
+                }
+            }
+            throw new IOException("Malformed varint in user snapshot");
+        }
+
+        String readString() throws IOException {
+            int length = readInt();
+            if (length < 0 || position + length > bytes.length) {
+                throw new IOException("Truncated user snapshot");
+            }
+            String value = new String(bytes, position, length, StandardCharsets.UTF_8);
+            position += length;
+            return value;
+        }
+
+        void skipString() throws IOException {
+            int length = readInt();
+            if (length < 0 || position + length > bytes.length) {
+                throw new IOException("Truncated user snapshot");
+            }
+            position += length;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+//util->UserCache
+package util;
+
+import models.User;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded LRU cache of parsed users, keyed by username.
+ * Each entry remembers a stamp of the files it was read from; if the files
+ * change behind our back the entry is treated as stale and re-read.
+ * Callers always get their own copy, so mutating a loaded user never
+ * changes what the cache holds.
+ */
+public class UserCache {
+    private static final int DEFAULT_CAPACITY = 64;
+
+    private final int capacity;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long staleReloads = 0;
+    private long evictions = 0;
+
+    public UserCache() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public UserCache(int capacity) {
+        this.capacity = capacity;
+        // Access order makes iteration order least-recently-used first
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > UserCache.this.capacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Look up a user.
+     * @param username the user to look up
+     * @param stamp the current stamp of the user's files
+     * @return a private copy of the cached user, or null if missing or stale
+     */
+    public synchronized User get(String username, long stamp) {
+        Entry entry = entries.get(username);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        if (entry.stamp != stamp) {
+            entries.remove(username);
+            staleReloads++;
+            misses++;
+            return null;
+        }
+        hits++;
+        return new User(entry.user);
+    }
+
+    /**
+     * Store a copy of a user that matches the given file stamp.
+     * @param username the user's name
+     * @param user the user as it is on disk
+     * @param stamp the stamp of the user's files
+     */
+    public synchronized void put(String username, User user, long stamp) {
+        entries.put(username, new Entry(new User(user), stamp));
+    }
+
+    public synchronized void invalidate(String username) {
+        entries.remove(username);
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getStaleReloads() {
+        return staleReloads;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private static class Entry {
+        private final User user;
+        private final long stamp;
+
+        Entry(User user, long stamp) {
+            this.user = user;
+            this.stamp = stamp;
+        }
+    }
+}
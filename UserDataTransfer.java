@@ -0,0 +1,335 @@
+//util->UserDataTransfer
+package util;
+
+import models.User;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Bulk export and import of every user (with password hash and full task
+ * history) through one compressed file, for backups and moving installs.
+ * Run it with the app closed.
+ *
+ * Layout: magic "SLEX", version, then chunks of
+ *   user count, raw length, compressed length, CRC32 of raw bytes, deflated bytes
+ * ending with a chunk count of -1 and the total number of users.
+ * Each chunk holds up to CHUNK_USERS users as
+ *   username, has password, [password hash], snapshot length, binary snapshot
+ * Chunks are compressed and decompressed on a worker pool; the file itself is
+ * read and written in order.
+ *
+ * Usage: java util.UserDataTransfer export <file>
+ *        java util.UserDataTransfer import <file> [--keep-existing]
+ */
+public class UserDataTransfer {
+    private static final int MAGIC = 0x534C4558; // "SLEX"
+    private static final int VERSION = 1;
+    private static final int CHUNK_USERS = 64;
+    private static final int END_OF_CHUNKS = -1;
+    private static final long WRITE_TIMEOUT_MINUTES = 10;
+
+    private final ExecutorService workers;
+    private final int maxInFlight;
+
+    private final AtomicInteger usersDone = new AtomicInteger();
+    private long bytesTransferred;
+    private long startNanos;
+
+    public UserDataTransfer(int threads) {
+        this.workers = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "user-transfer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.maxInFlight = threads * 2;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2 || !(args[0].equals("export") || args[0].equals("import"))) {
+            System.err.println("Usage: java util.UserDataTransfer export <file>");
+            System.err.println("       java util.UserDataTransfer import <file> [--keep-existing]");
+            System.exit(2);
+        }
+
+        UserDataTransfer transfer = new UserDataTransfer(Runtime.getRuntime().availableProcessors());
+        Path file = Path.of(args[1]);
+        boolean written;
+        try {
+            if (args[0].equals("export")) {
+                transfer.exportTo(file);
+            } else {
+                transfer.importFrom(file, args.length > 2 && args[2].equals("--keep-existing"));
+            }
+        } finally {
+            transfer.workers.shutdown();
+            // The writer threads are daemons, so everything must be on disk before main returns
+            written = DataManager.flush(WRITE_TIMEOUT_MINUTES, TimeUnit.MINUTES);
+        }
+        long failed = DataManager.getRepository().getFailedSaves();
+        if (!written) {
+            System.err.println("Not everything was written to disk (" + failed + " failed write attempt(s)); the "
+                    + args[0] + " is incomplete");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Write every stored user to a file.
+     * @param file the export file to create
+     * @return the number of users exported
+     */
+    public int exportTo(Path file) throws IOException {
+        List<String> usernames = DataManager.getRepository().listUsers();
+        start();
+
+        Deque<Future<byte[]>> inFlight = new ArrayDeque<>();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 64 * 1024))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            for (int i = 0; i < usernames.size(); i += CHUNK_USERS) {
+                List<String> batch = usernames.subList(i, Math.min(i + CHUNK_USERS, usernames.size()));
+                inFlight.add(workers.submit(() -> encodeChunk(batch)));
+                // Write finished chunks in order, keeping only a few in memory
+                while (inFlight.size() >= maxInFlight) {
+                    writeChunk(out, await(inFlight.poll()), usernames.size(), "Exported");
+                }
+            }
+            while (!inFlight.isEmpty()) {
+                writeChunk(out, await(inFlight.poll()), usernames.size(), "Exported");
+            }
+
+            out.writeInt(END_OF_CHUNKS);
+            out.writeInt(usersDone.get());
+        }
+        finish("Exported", file);
+        return usersDone.get();
+    }
+
+    /**
+     * Read users from an export file and save them.
+     * @param file the export file
+     * @param keepExisting true to skip users that already exist here
+     * @return the number of users imported
+     */
+    public int importFrom(Path file, boolean keepExisting) throws IOException {
+        start();
+        AtomicInteger skipped = new AtomicInteger();
+        AtomicInteger imported = new AtomicInteger();
+
+        Deque<Future<Integer>> inFlight = new ArrayDeque<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException("Not a user export file: " + file);
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported user export version: " + version);
+            }
+
+            while (true) {
+                int userCount = in.readInt();
+                if (userCount == END_OF_CHUNKS) {
+                    int expected = in.readInt();
+                    while (!inFlight.isEmpty()) {
+                        await(inFlight.poll());
+                    }
+                    if (usersDone.get() != expected) {
+                        throw new IOException("Export file lists " + expected + " users but contains " + usersDone.get());
+                    }
+                    break;
+                }
+
+                int rawLength = in.readInt();
+                byte[] compressed = new byte[in.readInt()];
+                long crc = in.readInt() & 0xFFFFFFFFL;
+                in.readFully(compressed);
+                bytesTransferred += compressed.length;
+
+                inFlight.add(workers.submit(() -> {
+                    int count = importChunk(inflate(compressed, rawLength, crc), userCount, keepExisting, imported, skipped);
+                    progress(usersDone.addAndGet(count), -1, "Imported");
+                    return count;
+                }));
+                while (inFlight.size() >= maxInFlight) {
+                    await(inFlight.poll());
+                }
+            }
+        }
+        finish("Imported", file);
+        if (skipped.get() > 0) {
+            System.out.println("Skipped " + skipped.get() + " users that already exist");
+        }
+        return imported.get();
+    }
+
+    private byte[] encodeChunk(List<String> usernames) throws IOException {
+        ByteArrayOutputStream raw = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(raw);
+        int count = 0;
+        for (String username : usernames) {
+            User user = DataManager.loadUser(username);
+            if (user == null) {
+                System.err.println("Skipping unreadable user: " + username);
+                continue;
+            }
+
+            // Export archived tasks too, so the file is the user's whole history
+            User full = new User(user);
+            full.getTasks().clear();
+            full.getTasks().addAll(DataManager.getTaskHistory(user));
+            full.setArchivedTaskCount(0L);
+
+            String password = DataManager.getCredentialStore().get(username);
+            byte[] snapshot = UserBinaryFormat.encode(full);
+            out.writeUTF(username);
+            out.writeBoolean(password != null);
+            if (password != null) {
+                out.writeUTF(password);
+            }
+            out.writeInt(snapshot.length);
+            out.write(snapshot);
+            count++;
+        }
+        out.flush();
+        byte[] bytes = raw.toByteArray();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        byte[] compressed = deflate(bytes);
+
+        ByteArrayOutputStream chunk = new ByteArrayOutputStream(compressed.length + 16);
+        DataOutputStream header = new DataOutputStream(chunk);
+        header.writeInt(count);
+        header.writeInt(bytes.length);
+        header.writeInt(compressed.length);
+        header.writeInt((int) crc.getValue());
+        header.write(compressed);
+        header.flush();
+        return chunk.toByteArray();
+    }
+
+    private void writeChunk(DataOutputStream out, byte[] chunk, int total, String verb) throws IOException {
+        out.write(chunk);
+        bytesTransferred += chunk.length;
+        progress(usersDone.addAndGet(ByteBuffer.wrap(chunk).getInt()), total, verb); // Chunks start with their user count
+    }
+
+    private static int importChunk(byte[] bytes, int userCount, boolean keepExisting,
+                                   AtomicInteger imported, AtomicInteger skipped) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        for (int i = 0; i < userCount; i++) {
+            String username = in.readUTF();
+            String password = in.readBoolean() ? in.readUTF() : null;
+            byte[] snapshot = new byte[in.readInt()];
+            in.readFully(snapshot);
+
+            if (keepExisting && DataManager.getRepository().exists(username)) {
+                skipped.incrementAndGet();
+                continue;
+            }
+            User user = UserBinaryFormat.decode(snapshot);
+            user.getTasks(); // Saves may be written later; don't keep the chunk alive through the lazy loader
+            DataManager.importUser(user);
+            if (password != null) {
+                DataManager.getCredentialStore().put(username, password);
+            }
+            imported.incrementAndGet();
+        }
+        return userCount;
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, bytes.length / 4));
+            byte[] buffer = new byte[16 * 1024];
+            while (!deflater.finished()) {
+                int n = deflater.deflate(buffer);
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int rawLength, long expectedCrc) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            byte[] raw = new byte[rawLength];
+            int n = 0;
+            while (n < rawLength && !inflater.finished()) {
+                int read = inflater.inflate(raw, n, rawLength - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += read;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(raw, 0, n);
+            if (n != rawLength || crc.getValue() != expectedCrc) {
+                throw new IOException("Checksum mismatch in export chunk");
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt export chunk", e);
+        } finally {
+            inflater.end();
+        }
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) throw (IOException) cause;
+            throw new IOException(cause);
+        }
+    }
+
+    private void start() {
+        usersDone.set(0);
+        bytesTransferred = 0;
+        startNanos = System.nanoTime();
+    }
+
+    private void progress(int done, int total, String verb) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        String of = total >= 0 ? "/" + total : "";
+        System.out.printf("%s %d%s users (%.0f users/s)%n", verb, done, of, done / Math.max(seconds, 1e-3));
+    }
+
+    private void finish(String verb, Path file) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        System.out.printf("%s %d users in %.2fs (%s, %.1f MB compressed)%n",
+                verb, usersDone.get(), seconds, file, bytesTransferred / (1024.0 * 1024.0));
+    }
+}
@@ -0,0 +1,30 @@
+//util->UserFormatConverter
+package util;
+
+import java.util.List;
+
+/**
+ * Converts every user in data/ between the JSON and binary snapshot formats.
+ * Run it with the app closed, then start the app with
+ * -Dstudyleveling.storage.format=binary (or json) to match.
+ *
+ * Usage: java util.UserFormatConverter [--to-binary | --to-json]
+ */
+public class UserFormatConverter {
+    public static void main(String[] args) {
+        boolean toBinary = args.length == 0 || !args[0].equals("--to-json");
+        List<String> usernames = DataManager.listStoredUsers();
+
+        int converted = 0;
+        for (String username : usernames) {
+            if (DataManager.convertUser(username, toBinary)) {
+                converted++;
+            } else {
+                System.err.println("Failed to convert user: " + username);
+            }
+        }
+
+        DataManager.flush();
+        System.out.println("Converted " + converted + "/" + usernames.size() + " users to " + (toBinary ? "binary" : "JSON"));
+    }
+}
@@ -0,0 +1,405 @@
+//util->UserJournal
+package util;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import models.Reward;
+import models.Task;
+import models.User;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Append-only per-user journal that sits next to data/<user>.json.
+ * Small changes (stats, added/completed/removed tasks) are appended as one line each
+ * instead of rewriting the whole user file. The journal remembers which snapshot it
+ * belongs to, so a journal left over from an older snapshot is never replayed.
+ */
+public class UserJournal {
+    private static final int COMPACT_AFTER_ENTRIES = 200;
+
+    private static final String OP_BASE = "BASE";
+    private static final String OP_STATS = "STATS";
+    private static final String OP_TASK_ADDED = "TASK_ADDED";
+    private static final String OP_TASK_UPDATED = "TASK_UPDATED";
+    private static final String OP_TASK_REMOVED = "TASK_REMOVED";
+
+    private final String dir;
+    private final Gson gson;
+
+    // What is currently on disk (snapshot + journal) for each user we have read or written
+    private final Map<String, JournalState> states = new ConcurrentHashMap<>();
+
+    public UserJournal(String dir, Gson gson) {
+        this.dir = dir;
+        this.gson = gson;
+    }
+
+    /**
+     * Apply the journal on top of a freshly read snapshot.
+     * @param snapshot the user read from data/<user>.json
+     * @param snapshotChecksum checksum of the snapshot bytes
+     * @return the user with all journaled changes applied
+     */
+    public User replay(User snapshot, long snapshotChecksum) {
+        String username = snapshot.getUsername();
+        File file = journalFile(username);
+        int applied = 0;
+        boolean needsCompaction = false;
+
+        if (file.exists()) {
+            try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+                String line = reader.readLine();
+                Entry header = parse(line);
+                if (header == null || !OP_BASE.equals(header.op) || header.base == null || header.base != snapshotChecksum) {
+                    // Journal belongs to an older snapshot that was already compacted
+                    needsCompaction = true;
+                } else {
+                    while ((line = reader.readLine()) != null) {
+                        Entry entry = parse(line);
+                        if (entry == null || !apply(snapshot, entry)) {
+                            // Torn write from a crash; everything before it is still good
+                            System.err.println("Ignoring damaged journal tail for user: " + username);
+                            needsCompaction = true;
+                            break;
+                        }
+                        applied++;
+                    }
+                }
+            } catch (IOException e) {
+                e.printStackTrace();
+                needsCompaction = true;
+            }
+        }
+
+        JournalState state = new JournalState(snapshotChecksum, snapshot);
+        state.entries = applied;
+        state.needsCompaction = needsCompaction;
+        states.put(username, state);
+
+        if (applied > 0) {
+            System.out.println("Replayed " + applied + " journal entries for user: " + username);
+        }
+        return snapshot;
+    }
+
+    /**
+     * Try to record the changes since the last write as journal entries.
+     * @param user the user to save
+     * @return true if the changes were appended, false if a full snapshot is needed
+     * @throws IOException if appending to the journal fails
+     */
+    public boolean append(User user) throws IOException {
+        JournalState state = states.get(user.getUsername());
+        if (state == null || state.needsCompaction) {
+            return false;
+        }
+
+        // Copy first: the UI thread may keep changing the user while we write
+        JournalState next = new JournalState(state.baseChecksum, user);
+        List<Entry> entries = diff(state, next);
+        if (entries == null || state.entries + entries.size() > COMPACT_AFTER_ENTRIES) {
+            return false;
+        }
+        if (entries.isEmpty()) {
+            return true; // Nothing changed since the last write
+        }
+
+        File file = journalFile(user.getUsername());
+        StringBuilder out = new StringBuilder();
+        if (!file.exists() || file.length() == 0) {
+            Entry header = new Entry(OP_BASE);
+            header.base = state.baseChecksum;
+            out.append(gson.toJson(header)).append('\n');
+        }
+        for (Entry entry : entries) {
+            out.append(gson.toJson(entry)).append('\n');
+        }
+
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            long length = channel.size();
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(out.toString().getBytes(StandardCharsets.UTF_8));
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+                channel.force(false);
+            } catch (IOException e) {
+                // Entries appended after a torn line would be dropped on replay, so the retry writes a snapshot
+                state.needsCompaction = true;
+                try {
+                    channel.truncate(length);
+                } catch (IOException ignored) {
+                    // The snapshot written on retry replaces this journal anyway
+                }
+                throw e;
+            }
+        }
+
+        next.entries = state.entries + entries.size();
+        states.put(user.getUsername(), next);
+        return true;
+    }
+
+    /**
+     * Start a new, empty journal after a full snapshot has been written.
+     * @param user the user that was written
+     * @param snapshotChecksum checksum of the snapshot bytes
+     */
+    public void reset(User user, long snapshotChecksum) {
+        File file = journalFile(user.getUsername());
+        JournalState state = new JournalState(snapshotChecksum, user);
+        if (file.exists() && !file.delete()) {
+            // Its header names the old snapshot, so entries appended to it would be ignored on replay
+            System.err.println("Could not delete journal for user: " + user.getUsername());
+            state.needsCompaction = true;
+        }
+        states.put(user.getUsername(), state);
+    }
+
+    private File journalFile(String username) {
+        return new File(dir + username + ".journal");
+    }
+
+    private Entry parse(String line) {
+        if (line == null || line.isEmpty()) {
+            return null;
+        }
+        try {
+            return gson.fromJson(line, Entry.class);
+        } catch (JsonParseException e) {
+            return null;
+        }
+    }
+
+    private boolean apply(User user, Entry entry) {
+        if (entry.op == null) {
+            return false;
+        }
+        if (OP_STATS.equals(entry.op)) {
+            if (entry.xp == null || entry.level == null || entry.coins == null || entry.totalCompletedTasks == null) {
+                return false;
+            }
+            user.setXp(entry.xp);
+            user.setLevel(entry.level);
+            user.setCoins(entry.coins);
+            user.setTotalCompletedTasks(entry.totalCompletedTasks);
+            return true;
+        }
+
+        List<Task> tasks = user.getTasks();
+        switch (entry.op) {
+            case OP_TASK_ADDED:
+                if (entry.task == null) return false;
+                tasks.add(entry.task);
+                return true;
+            case OP_TASK_UPDATED:
+                if (entry.index == null || entry.completed == null || entry.index >= tasks.size()) return false;
+                Task task = tasks.get(entry.index);
+                task.setCompleted(entry.completed);
+                task.setCompletionDate(entry.completionDate);
+                return true;
+            case OP_TASK_REMOVED:
+                if (entry.index == null || entry.index >= tasks.size()) return false;
+                tasks.remove((int) entry.index);
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * Work out the journal entries that turn the recorded state into the given user.
+     * Returns null when the change can't be expressed as entries (reordered tasks,
+     * edited rewards, ...) and a full snapshot has to be written instead.
+     */
+    private List<Entry> diff(JournalState state, JournalState next) {
+        if (!state.rewardsSignature.equals(next.rewardsSignature)) {
+            return null;
+        }
+
+        List<Entry> entries = new ArrayList<>();
+
+        // Task history that was never decoded on either side can't have changed
+        if (!state.sharesTaskHistory(next)) {
+            List<TaskState> before = new ArrayList<>(state.tasks());
+            List<TaskState> after = next.tasks();
+
+            if (after.size() < before.size()) {
+                if (after.size() != before.size() - 1) {
+                    return null;
+                }
+                int removed = 0;
+                while (removed < after.size() && before.get(removed).sameTask(after.get(removed))) {
+                    removed++;
+                }
+                before.remove(removed);
+                Entry entry = new Entry(OP_TASK_REMOVED);
+                entry.index = removed;
+                entries.add(entry);
+            }
+
+            for (int i = 0; i < before.size(); i++) {
+                TaskState old = before.get(i);
+                TaskState task = after.get(i);
+                if (!old.sameTask(task)) {
+                    return null;
+                }
+                if (old.completed != task.completed || !Objects.equals(old.completionDate, task.completionDate)) {
+                    Entry entry = new Entry(OP_TASK_UPDATED);
+                    entry.index = i;
+                    entry.completed = task.completed;
+                    entry.completionDate = task.completionDate;
+                    entries.add(entry);
+                }
+            }
+
+            for (int i = before.size(); i < after.size(); i++) {
+                Entry entry = new Entry(OP_TASK_ADDED);
+                entry.task = after.get(i).toTask();
+                entries.add(entry);
+            }
+        }
+
+        // Counters are journaled as absolute values so replaying them is idempotent;
+        // level-up bonuses make xp/coin deltas ambiguous to reconstruct.
+        if (state.xp != next.xp || state.level != next.level
+                || state.coins != next.coins || state.totalCompletedTasks != next.totalCompletedTasks) {
+            Entry entry = new Entry(OP_STATS);
+            entry.xp = next.xp;
+            entry.level = next.level;
+            entry.coins = next.coins;
+            entry.totalCompletedTasks = next.totalCompletedTasks;
+            entries.add(entry);
+        }
+
+        return entries;
+    }
+
+    private static String rewardsSignature(User user) {
+        StringBuilder signature = new StringBuilder();
+        for (Reward reward : user.getCustomRewards()) {
+            signature.append(reward.getName()).append('\u0000').append(reward.getCost()).append('\u0000');
+        }
+        return signature.toString();
+    }
+
+    // One line of the journal file
+    private static class Entry {
+        private String op;
+        private Long base;
+        private Integer index;
+        private Task task;
+        private Boolean completed;
+        private LocalDate completionDate;
+        private Integer xp;
+        private Integer level;
+        private Integer coins;
+        private Integer totalCompletedTasks;
+
+        Entry(String op) {
+            this.op = op;
+        }
+    }
+
+    // Copy of the values last made durable for one user
+    private static class JournalState {
+        private final long baseChecksum;
+        private int entries = 0;
+        private boolean needsCompaction = false;
+        private final int xp;
+        private final int level;
+        private final int coins;
+        private final int totalCompletedTasks;
+        private final String rewardsSignature;
+        private Supplier<ArrayList<Task>> taskLoader;
+        private List<TaskState> tasks;
+
+        JournalState(long baseChecksum, User user) {
+            this.baseChecksum = baseChecksum;
+            xp = user.getXp();
+            level = user.getLevel();
+            coins = user.getCoins();
+            totalCompletedTasks = user.getTotalCompletedTasks();
+            rewardsSignature = UserJournal.rewardsSignature(user);
+
+            // Don't force a lazily loaded task history just to remember it
+            Supplier<ArrayList<Task>> loader = user.getTaskLoader();
+            if (loader != null) {
+                taskLoader = loader;
+            } else {
+                tasks = capture(user.getTasks());
+            }
+        }
+
+        List<TaskState> tasks() {
+            if (tasks == null) {
+                tasks = capture(taskLoader.get());
+                taskLoader = null;
+            }
+            return tasks;
+        }
+
+        boolean sharesTaskHistory(JournalState other) {
+            return taskLoader != null && taskLoader == other.taskLoader;
+        }
+
+        private static List<TaskState> capture(List<Task> source) {
+            List<TaskState> captured = new ArrayList<>();
+            for (Task task : source) {
+                captured.add(new TaskState(task));
+            }
+            return captured;
+        }
+    }
+
+    private static class TaskState {
+        private final String description;
+        private final int xpReward;
+        private final int coinReward;
+        private final Task.Difficulty difficulty;
+        private final int timeLimit;
+        private final boolean completed;
+        private final LocalDate completionDate;
+
+        TaskState(Task task) {
+            description = task.getDescription();
+            xpReward = task.getXpReward();
+            coinReward = task.getCoinReward();
+            difficulty = task.getDifficulty();
+            timeLimit = task.getTimeLimit();
+            completed = task.isCompleted();
+            completionDate = task.getCompletionDate();
+        }
+
+        boolean sameTask(TaskState other) {
+            return Objects.equals(description, other.description)
+                    && xpReward == other.xpReward
+                    && coinReward == other.coinReward
+                    && difficulty == other.difficulty
+                    && timeLimit == other.timeLimit;
+        }
+
+        Task toTask() {
+            Task task = new Task(description, xpReward, coinReward, difficulty, timeLimit);
+            task.setCompleted(completed);
+            task.setCompletionDate(completionDate);
+            return task;
+        }
+    }
+}
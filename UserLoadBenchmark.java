@@ -0,0 +1,119 @@
+//util->UserLoadBenchmark
+package util;
+
+import com.google.gson.Gson;
+import models.Task;
+import models.User;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Compares loading a JSON user file as a whole (read everything, then Gson)
+ * with StreamingUserReader, for users with large task histories.
+ * Reports load time and bytes allocated per load.
+ *
+ * Usage: java util.UserLoadBenchmark [taskCount...]
+ */
+public class UserLoadBenchmark {
+    private static final int[] DEFAULT_SIZES = {10_000, 100_000};
+    private static final int WARMUP_ROUNDS = 3;
+    private static final int MEASURED_ROUNDS = 10;
+
+    private interface Loader {
+        User load(Path path) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int[] sizes = args.length == 0 ? DEFAULT_SIZES : Arrays.stream(args).mapToInt(Integer::parseInt).toArray();
+        Gson gson = DataManager.getGson();
+
+        System.out.printf("%-10s %-10s %10s %10s %10s %14s%n", "tasks", "loader", "avg ms", "p50 ms", "max ms", "MB alloc/load");
+        for (int size : sizes) {
+            Path file = Files.createTempFile("user-load-", ".json");
+            try {
+                Files.write(file, gson.toJson(sampleUser(size)).getBytes(StandardCharsets.UTF_8));
+
+                run(size, "tree", file, path ->
+                        gson.fromJson(new String(Files.readAllBytes(path), StandardCharsets.UTF_8), User.class));
+                run(size, "streaming", file, path -> {
+                    try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                        return StreamingUserReader.read(gson, new BufferedReader(
+                                new InputStreamReader(Channels.newInputStream(channel), StandardCharsets.UTF_8), 64 * 1024));
+                    }
+                });
+            } finally {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    private static void run(int size, String name, Path file, Loader loader) throws IOException {
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            check(loader.load(file), size);
+        }
+
+        long[] samples = new long[MEASURED_ROUNDS];
+        long allocated = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long allocatedBefore = allocatedBytes();
+            long start = System.nanoTime();
+            User user = loader.load(file);
+            samples[i] = System.nanoTime() - start;
+            allocated += allocatedBytes() - allocatedBefore;
+            check(user, size);
+        }
+
+        Arrays.sort(samples);
+        double avg = Arrays.stream(samples).average().orElse(0);
+        System.out.printf("%-10d %-10s %10.1f %10.1f %10.1f %14.1f%n", size, name,
+                avg / 1e6,
+                samples[samples.length / 2] / 1e6,
+                samples[samples.length - 1] / 1e6,
+                allocated / (double) MEASURED_ROUNDS / (1024 * 1024));
+    }
+
+    private static User sampleUser(int taskCount) {
+        User user = new User("benchmark");
+        user.setXp(123_456);
+        user.setLevel(42);
+        user.setCoins(9_876);
+        LocalDate start = LocalDate.of(2020, 1, 1);
+        Task.Difficulty[] difficulties = Task.Difficulty.values();
+        for (int i = 0; i < taskCount; i++) {
+            Task.Difficulty difficulty = difficulties[i % difficulties.length];
+            Task task = new Task("Study session " + (i % 50), difficulty.getXpValue(), difficulty.getCoinValue(), difficulty, 25);
+            if (i % 10 != 0) {
+                task.setCompleted(true);
+                task.setCompletionDate(start.plusDays(i / 20));
+            }
+            user.getTasks().add(task);
+        }
+        return user;
+    }
+
+    private static void check(User user, int size) {
+        if (user == null || user.getTasks().size() != size) {
+            throw new IllegalStateException("loaded user has the wrong number of tasks");
+        }
+    }
+
+    // Bytes allocated by this thread so far, or 0 if the JVM can't tell us
+    private static long allocatedBytes() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) threads).getCurrentThreadAllocatedBytes();
+        }
+        return 0;
+    }
+}
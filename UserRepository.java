@@ -0,0 +1,72 @@
+//util->UserRepository
+package util;
+
+import models.Task;
+import models.User;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Where users are stored. DataManager picks the implementation with
+ * -Dstudyleveling.storage.repository=files (default) or embedded.
+ */
+public interface UserRepository {
+    // Level, then XP, then coins, all highest first (same order as the leaderboards)
+    Comparator<User> RANKING = Comparator
+            .comparingInt(User::getLevel).reversed()
+            .thenComparing(Comparator.comparingInt(User::getXp).reversed())
+            .thenComparing(Comparator.comparingInt(User::getCoins).reversed());
+
+    /**
+     * @return the user, or null if there is no such user
+     */
+    User load(String username);
+
+    /**
+     * Queue a user to be saved; the write may happen in the background.
+     */
+    void save(User user);
+
+    boolean exists(String username);
+
+    /**
+     * @return names of all stored users, in name order
+     */
+    List<String> listUsers();
+
+    /**
+     * @param username the user whose tasks to search
+     * @param from first completion date to include
+     * @param to last completion date to include
+     * @return the user's tasks completed between the two dates, oldest first
+     */
+    List<Task> findTasksCompletedBetween(String username, LocalDate from, LocalDate to);
+
+    /**
+     * Highest ranked users by level, then XP, then coins.
+     * The returned users only carry their stats, not their tasks or rewards;
+     * use load() for the full user.
+     * @param limit maximum number of users to return
+     */
+    List<User> findTopUsers(int limit);
+
+    /**
+     * Write everything queued so far and wait for it to finish.
+     * @return true if everything queued was written, false if it took too long
+     */
+    boolean flush(long timeout, TimeUnit unit);
+
+    /**
+     * Wait until every save queued so far has been written.
+     * @return true if all queued saves were written in time
+     */
+    boolean awaitDurable(long timeout, TimeUnit unit);
+
+    /**
+     * @return write attempts that failed; the saves stay queued and are retried
+     */
+    long getFailedSaves();
+}
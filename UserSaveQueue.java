@@ -0,0 +1,268 @@
+//util->UserSaveQueue
+package util;
+
+import models.User;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Write-behind queue for user saves.
+ * Saves are collected per username for a short window and written by a single
+ * background thread, so a burst of saves for the same user costs one disk write
+ * and the Swing thread never waits on I/O.
+ */
+public class UserSaveQueue {
+    private static final long DEFAULT_WINDOW_MS = 250;
+    private static final long RETRY_DELAY_MS = 2000;
+
+    private final Consumer<User> sink;
+    private final long windowMs;
+    private final ScheduledExecutorService writer;
+
+    // Everything below is guarded by lock
+    private final Object lock = new Object();
+    private final Map<String, Pending> pending = new LinkedHashMap<>();
+    private boolean drainScheduled = false;
+    private long enqueuedSeq = 0;
+    private long durableSeq = 0;
+    private long savesRequested = 0;
+    private long savesCoalesced = 0;
+    private long writesPerformed = 0;
+    private long writesFailed = 0;
+
+    // Serializes writes between the background thread and callers of flush(username).
+    // Always taken before lock, never after.
+    private final Object writeLock = new Object();
+
+    public UserSaveQueue(Consumer<User> sink) {
+        this(sink, DEFAULT_WINDOW_MS);
+    }
+
+    public UserSaveQueue(Consumer<User> sink, long windowMs) {
+        this.sink = sink;
+        this.windowMs = windowMs;
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "user-save-writer");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /**
+     * Queue a user for saving. If a save for the same username is already
+     * pending, the newer state replaces it and only one write happens.
+     * The user is copied here, on the thread that changes it, so the writer
+     * never serializes an object that is still being modified.
+     * @param user the user to save
+     */
+    public void enqueue(User user) {
+        User copy = new User(user);
+        synchronized (lock) {
+            savesRequested++;
+            enqueuedSeq++;
+            Pending previous = pending.get(copy.getUsername());
+            if (previous != null) {
+                // The older save is folded into this one, so it stays undurable until this one is written
+                savesCoalesced++;
+                previous.user = copy;
+            } else {
+                pending.put(copy.getUsername(), new Pending(copy, enqueuedSeq));
+            }
+            scheduleDrain(windowMs);
+        }
+    }
+
+    // Caller holds lock
+    private void scheduleDrain(long delayMs) {
+        if (!drainScheduled) {
+            drainScheduled = true;
+            writer.schedule(this::drain, delayMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Write a pending save for one user right away on the calling thread.
+     * Used before reading the user's file so the read sees the latest state.
+     * @param username the user whose pending save should be written
+     */
+    public void flush(String username) {
+        // Holding writeLock also waits out a background batch that already took this user
+        synchronized (writeLock) {
+            Pending entry;
+            synchronized (lock) {
+                entry = pending.remove(username);
+            }
+            if (entry != null && !write(entry.user)) {
+                synchronized (lock) {
+                    requeue(entry);
+                    scheduleDrain(RETRY_DELAY_MS);
+                }
+            }
+        }
+    }
+
+    /**
+     * Write everything queued so far and wait for it to reach disk.
+     * @return true if everything queued was written, false if it took too long
+     */
+    public boolean flush() {
+        return flush(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Write everything queued so far and wait up to the given time for it to reach disk.
+     * Saves whose write failed stay queued and are retried, so they keep this from returning true.
+     * @return true if everything queued was written, false if a write failed or it took too long
+     */
+    public boolean flush(long timeout, TimeUnit unit) {
+        writer.execute(this::drain);
+        boolean durable = awaitDurable(timeout, unit);
+        if (!durable) {
+            System.err.println(getPendingCount() + " queued user save(s) not written in time");
+        }
+        return durable;
+    }
+
+    /**
+     * Wait until every save queued before this call has been written.
+     * @param timeout maximum time to wait
+     * @param unit unit of the timeout
+     * A save whose write failed is not durable until a retry succeeds.
+     * @return true if all earlier saves are durable, false on timeout or interrupt
+     */
+    public boolean awaitDurable(long timeout, TimeUnit unit) {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (lock) {
+            long target = enqueuedSeq;
+            while (durableSeq < target) {
+                long remainingMs = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+                if (remainingMs <= 0) {
+                    return false;
+                }
+                try {
+                    lock.wait(remainingMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private void drain() {
+        synchronized (writeLock) {
+            List<Pending> batch;
+            long seq;
+            synchronized (lock) {
+                batch = new ArrayList<>(pending.values());
+                pending.clear();
+                seq = enqueuedSeq;
+                drainScheduled = false;
+            }
+
+            List<Pending> failed = new ArrayList<>();
+            for (Pending entry : batch) {
+                if (!write(entry.user)) {
+                    failed.add(entry);
+                }
+            }
+
+            synchronized (lock) {
+                for (Pending entry : failed) {
+                    requeue(entry);
+                }
+                // Everything before the oldest save still waiting to be written is on disk
+                long durable = seq;
+                for (Pending entry : pending.values()) {
+                    durable = Math.min(durable, entry.firstSeq - 1);
+                }
+                if (durable > durableSeq) {
+                    durableSeq = durable;
+                }
+                if (!failed.isEmpty()) {
+                    scheduleDrain(RETRY_DELAY_MS);
+                }
+                lock.notifyAll();
+            }
+        }
+    }
+
+    // Put a failed save back for the next drain, unless a newer save of the user replaced it meanwhile.
+    // Caller holds lock.
+    private void requeue(Pending entry) {
+        Pending newer = pending.get(entry.user.getUsername());
+        if (newer == null) {
+            pending.put(entry.user.getUsername(), entry);
+        } else {
+            newer.firstSeq = Math.min(newer.firstSeq, entry.firstSeq);
+        }
+    }
+
+    private boolean write(User user) {
+        synchronized (writeLock) {
+            // user is the queue's own copy, so nothing else can change it while it's written
+            try {
+                sink.accept(user);
+                synchronized (lock) {
+                    writesPerformed++;
+                }
+                return true;
+            } catch (RuntimeException e) {
+                System.err.println("Could not save user " + user.getUsername() + ", will retry: " + e.getMessage());
+                synchronized (lock) {
+                    writesFailed++;
+                }
+                return false;
+            }
+        }
+    }
+
+    public long getSavesRequested() {
+        synchronized (lock) {
+            return savesRequested;
+        }
+    }
+
+    public long getSavesCoalesced() {
+        synchronized (lock) {
+            return savesCoalesced;
+        }
+    }
+
+    public long getWritesPerformed() {
+        synchronized (lock) {
+            return writesPerformed;
+        }
+    }
+
+    // Write attempts that failed; the save stays queued and is retried
+    public long getWritesFailed() {
+        synchronized (lock) {
+            return writesFailed;
+        }
+    }
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return pending.size();
+        }
+    }
+
+    private static final class Pending {
+        User user;
+        long firstSeq; // Sequence of the oldest save this entry holds that isn't on disk yet
+
+        Pending(User user, long firstSeq) {
+            this.user = user;
+            this.firstSeq = firstSeq;
+        }
+    }
+}